@@ -0,0 +1,66 @@
+package cc.pulseapp.api.benchmark;
+
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.common.StringUtils;
+import cc.pulseapp.api.service.TFAService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the hot paths of
+ * registering and logging in a user.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+    private static final String PASSWORD = "Sup3r$ecretPassw0rd";
+
+    private final TFAService tfaService = new TFAService();
+    private byte[] salt;
+    private String tfaSecret;
+
+    @Setup
+    public void setup() {
+        salt = HashUtils.generateSalt();
+        tfaSecret = tfaService.generateSecretKey();
+    }
+
+    /**
+     * A single (legacy) password hash, at the production iteration count.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3) @Measurement(iterations = 10)
+    public String hashPassword() {
+        return HashUtils.hash(salt, PASSWORD);
+    }
+
+    /**
+     * Generating an access or refresh token.
+     */
+    @Benchmark
+    public String generateToken() {
+        return StringUtils.generateRandom(128, true, true, false);
+    }
+
+    /**
+     * Checking a password against the requirements.
+     */
+    @Benchmark
+    public StringUtils.PasswordError checkPasswordRequirements() {
+        return StringUtils.checkPasswordRequirements(PASSWORD);
+    }
+
+    /**
+     * Getting the current TFA pin of a secret.
+     */
+    @Benchmark
+    public String getTfaPin() {
+        return tfaService.getPin(tfaSecret);
+    }
+}
@@ -0,0 +1,74 @@
+package cc.pulseapp.api.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the concurrency ceiling of serving blocking
+ * requests on a fixed pool of platform threads (sized
+ * like Tomcat's default pool) against virtual threads.
+ * <p>
+ * Each request blocks for {@link #IO_MILLIS}, standing in
+ * for a Redis, Mongo, or captcha round trip. The virtual
+ * thread variant needs Java 21+ (build with {@code -Pjava21}).
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2) @Measurement(iterations = 5)
+@Fork(1)
+public class ConcurrencyBenchmark {
+    private static final int PLATFORM_THREADS = 200;
+    private static final long IO_MILLIS = 20L;
+
+    /**
+     * The kind of threads to serve requests on.
+     */
+    @Param({ "platform", "virtual" })
+    public String threads;
+
+    /**
+     * The number of concurrent requests.
+     */
+    @Param({ "200", "2000", "10000" })
+    public int requests;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws Exception {
+        executor = threads.equals("platform") ? Executors.newFixedThreadPool(PLATFORM_THREADS)
+                : (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Serve a burst of concurrent blocking requests.
+     */
+    @Benchmark
+    public int serveBurst() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                Thread.sleep(IO_MILLIS);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return futures.size();
+    }
+}
@@ -0,0 +1,93 @@
+package cc.pulseapp.api.benchmark;
+
+import cc.pulseapp.api.common.RequestUtils;
+import cc.pulseapp.api.common.Tuple;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.DeviceType;
+import cc.pulseapp.api.service.UserAgentService;
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for inspecting incoming requests.
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_6 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.6 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:131.0) Gecko/20100101 Firefox/131.0",
+            "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Mobile Safari/537.36"
+    };
+
+    /**
+     * Which ip headers the request carries.
+     */
+    @Param({ "none", "cloudflare", "forwarded-chain" })
+    public String ipHeaders;
+
+    /**
+     * Whether the user agent analyzer caches results.
+     */
+    @Param({ "true", "false" })
+    public boolean cachedAnalyzer;
+
+    private MockHttpServletRequest request;
+    private UserAgentAnalyzer analyzer;
+    private UserAgentService fastPathClassifier;
+    private int userAgentIndex;
+
+    @Setup
+    public void setup() {
+        request = new MockHttpServletRequest("GET", "/v1/user/@me");
+        request.setRemoteAddr("10.0.0.1");
+        switch (ipHeaders) {
+            case "cloudflare" -> request.addHeader("CF-Connecting-IP", "203.0.113.7");
+            case "forwarded-chain" -> request.addHeader("X-Forwarded-For", "203.0.113.7, 198.51.100.2, 10.0.0.1");
+        }
+        UserAgentAnalyzer.UserAgentAnalyzerBuilder builder = UserAgentAnalyzer.newBuilder()
+                .withField("DeviceClass")
+                .withField("AgentName")
+                .hideMatcherLoadStats();
+        analyzer = (cachedAnalyzer ? builder.withCache(1000) : builder.withoutCache()).build();
+        fastPathClassifier = new UserAgentService(); // Never initialized, so it only has the fast path
+    }
+
+    /**
+     * Resolving the real ip of a request.
+     */
+    @Benchmark
+    public String getRealIp() {
+        return RequestUtils.getRealIp(request);
+    }
+
+    /**
+     * Parsing a user agent with the (restricted) analyzer,
+     * as done when creating a session.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public UserAgent.ImmutableUserAgent parseUserAgent() {
+        String userAgent = USER_AGENTS[userAgentIndex++ & (USER_AGENTS.length - 1)];
+        return analyzer.parse(userAgent);
+    }
+
+    /**
+     * Classifying a user agent with the fast-path
+     * classifier, used until the analyzer is built.
+     */
+    @Benchmark
+    public Tuple<DeviceType, BrowserType> classifyUserAgentFastPath() {
+        String userAgent = USER_AGENTS[userAgentIndex++ & (USER_AGENTS.length - 1)];
+        return fastPathClassifier.classify(userAgent);
+    }
+}
@@ -0,0 +1,156 @@
+package cc.pulseapp.api.benchmark;
+
+import cc.pulseapp.api.model.ErrorResponse;
+import cc.pulseapp.api.model.org.DetailedOrganization;
+import cc.pulseapp.api.model.org.Organization;
+import cc.pulseapp.api.model.org.OrganizationMember;
+import cc.pulseapp.api.model.page.StatusPage;
+import cc.pulseapp.api.model.page.StatusPageTheme;
+import cc.pulseapp.api.model.user.User;
+import cc.pulseapp.api.model.user.UserDTO;
+import cc.pulseapp.api.model.user.UserTier;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.Device;
+import cc.pulseapp.api.model.user.device.DeviceType;
+import cc.pulseapp.api.model.user.response.UserAuthResponse;
+import cc.pulseapp.api.model.user.session.Session;
+import cc.pulseapp.api.model.user.session.SessionLocation;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for serializing the response DTOs,
+ * comparing reflection to generated accessors.
+ * <p>
+ * Responses are written to a reused stream, as the
+ * message converter writes straight to the response.
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    /**
+     * How properties are accessed, "reflection"
+     * (the default) or "blackbird".
+     */
+    @Param({ "reflection", "blackbird" })
+    public String accessors;
+
+    private ObjectMapper mapper;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+    private UserDTO user;
+    private List<DetailedOrganization> organizations;
+    private List<Device> devices;
+    private UserAuthResponse authResponse;
+    private ErrorResponse errorResponse;
+
+    @Setup
+    public void setup() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL); // Same as spring.jackson.default-property-inclusion
+        if (accessors.equals("blackbird")) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        mapper = builder.build();
+
+        Date now = new Date();
+        User rawUser = new User(1L, "user@pulseapp.cc", "user@pulseapp.cc", "user", "hash", null,
+                null, UserTier.FREE, null, 0, now, 1L);
+        user = UserDTO.asDTO(rawUser, now);
+
+        organizations = new ArrayList<>();
+        for (int org = 0; org < 5; org++) {
+            List<OrganizationMember> members = new ArrayList<>();
+            for (int member = 0; member < 10; member++) {
+                members.add(new OrganizationMember(100L + member, 7));
+            }
+            List<StatusPage> statusPages = new ArrayList<>();
+            for (int page = 0; page < 3; page++) {
+                statusPages.add(new StatusPage(1_000L * org + page, "Status Page " + page, "status page " + page,
+                        "status-page-" + page, "The status of our services", null, null, StatusPageTheme.AUTO, true, org));
+            }
+            organizations.add(new DetailedOrganization(new Organization(org, "Organization " + org, "organization-" + org,
+                    null, members, 1L), statusPages));
+        }
+
+        SessionLocation location = new SessionLocation("203.0.113.7", "US", "California", "San Francisco",
+                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/129.0.0.0 Safari/537.36",
+                DeviceType.DESKTOP, BrowserType.CHROME);
+        Session session = new Session(2L, 1L, "refresh-token", location, now.getTime() + TimeUnit.DAYS.toMillis(30L))
+                .withAccessToken("2.1." + now.getTime() + ".signature", now.getTime() + TimeUnit.MINUTES.toMillis(5L));
+        devices = new ArrayList<>();
+        for (int device = 0; device < 5; device++) {
+            devices.add(Device.fromSession(session, DeviceType.DESKTOP, BrowserType.CHROME, now));
+        }
+        authResponse = new UserAuthResponse(session, user);
+        errorResponse = new ErrorResponse(HttpStatus.BAD_REQUEST, "USER_NOT_FOUND");
+    }
+
+    /**
+     * The response of {@code GET /v1/user/@me}.
+     */
+    @Benchmark
+    public int writeUser() throws IOException {
+        return write(user);
+    }
+
+    /**
+     * The response of {@code GET /v1/organization/@me}.
+     */
+    @Benchmark
+    public int writeOrganizations() throws IOException {
+        return write(organizations);
+    }
+
+    /**
+     * The response of {@code GET /v1/user/devices}.
+     */
+    @Benchmark
+    public int writeDevices() throws IOException {
+        return write(devices);
+    }
+
+    /**
+     * The response of a login or registration.
+     */
+    @Benchmark
+    public int writeAuthResponse() throws IOException {
+        return write(authResponse);
+    }
+
+    /**
+     * The response of a failed request.
+     */
+    @Benchmark
+    public int writeErrorResponse() throws IOException {
+        return write(errorResponse);
+    }
+
+    /**
+     * Write the given value to the reused stream.
+     *
+     * @param value the value to write
+     * @return the number of bytes written
+     * @throws IOException if writing fails
+     */
+    private int write(Object value) throws IOException {
+        output.reset();
+        mapper.writeValue(output, value);
+        return output.size();
+    }
+}
@@ -0,0 +1,48 @@
+package cc.pulseapp.api.benchmark;
+
+import cc.pulseapp.api.common.SnowflakeGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for generating snowflakes.
+ * <p>
+ * This uses the {@link SnowflakeGenerator} behind
+ * {@code SnowflakeService} directly, as the service
+ * needs Redis to lease a node.
+ * </p>
+ *
+ * @author Braydon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2) @Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnowflakeBenchmark {
+    private final SnowflakeGenerator generator = new SnowflakeGenerator(7);
+
+    /**
+     * Generating a single snowflake.
+     */
+    @Benchmark
+    public long generateSnowflake() {
+        return generator.next();
+    }
+
+    /**
+     * Generating a single snowflake under contention.
+     */
+    @Benchmark @Threads(4)
+    public long generateSnowflakeContended() {
+        return generator.next();
+    }
+
+    /**
+     * Generating a batch of snowflakes.
+     */
+    @Benchmark @OperationsPerInvocation(100)
+    public long[] generateSnowflakeBatch() {
+        return generator.next(100);
+    }
+}
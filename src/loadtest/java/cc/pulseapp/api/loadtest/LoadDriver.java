@@ -0,0 +1,344 @@
+package cc.pulseapp.api.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a weighted mix of {@link Operation}'s against
+ * a running app from a number of concurrent clients,
+ * recording the latency of every operation.
+ *
+ * @author Braydon
+ */
+@Log4j2(topic = "Load Test")
+public final class LoadDriver {
+    private static final String PASSWORD = "LoadTest#1234";
+    private static final String CAPTCHA_RESPONSE = "loadtest";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1L);
+
+    /**
+     * The base url of the app.
+     */
+    @NonNull private final String baseUrl;
+
+    /**
+     * The number of users to register before driving traffic.
+     */
+    private final int users;
+
+    /**
+     * The number of concurrent clients.
+     */
+    private final int concurrency;
+
+    /**
+     * How long (in seconds) to drive traffic before recording.
+     */
+    private final int warmupSeconds;
+
+    /**
+     * How long (in seconds) to record for.
+     */
+    private final int durationSeconds;
+
+    /**
+     * The operations to pick from, repeated by their weight.
+     */
+    @NonNull private final Operation[] weightedOperations;
+
+    /**
+     * The client to send requests with.
+     */
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5L)).build();
+
+    /**
+     * The mapper to read responses with.
+     */
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The registered accounts.
+     */
+    private final List<Account> accounts = new CopyOnWriteArrayList<>();
+
+    /**
+     * The counter for unique account names.
+     */
+    private final AtomicInteger accountCounter = new AtomicInteger();
+
+    /**
+     * The latency (in micros) of each operation.
+     */
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    /**
+     * The number of failed requests of each operation.
+     */
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+
+    /**
+     * Whether results are being recorded.
+     */
+    private volatile boolean recording;
+
+    /**
+     * Whether the clients should stop.
+     */
+    private volatile boolean stopped;
+
+    public LoadDriver(@NonNull String baseUrl, int users, int concurrency, int warmupSeconds, int durationSeconds, @NonNull Map<String, Integer> mix) {
+        this.baseUrl = baseUrl;
+        this.users = users;
+        this.concurrency = concurrency;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+
+        List<Operation> operations = new ArrayList<>();
+        for (Operation operation : Operation.VALUES) {
+            for (int i = 0; i < mix.getOrDefault(operation.getId(), 0); i++) {
+                operations.add(operation);
+            }
+            latencies.put(operation, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            errors.put(operation, new LongAdder());
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        weightedOperations = operations.toArray(Operation[]::new);
+    }
+
+    /**
+     * Seed the users, drive the traffic, and report the results.
+     *
+     * @return the error rate (0-1) of the recorded operations
+     * @throws InterruptedException if interrupted while running
+     */
+    public double run() throws InterruptedException {
+        log.info("Registering {} users...", users);
+        for (int i = 0; i < users; i++) {
+            if (!execute(Operation.REGISTER)) {
+                throw new IllegalStateException("Failed to register the seed users");
+            }
+        }
+        log.info("Driving traffic from {} clients, warming up for {}s and recording for {}s", concurrency, warmupSeconds, durationSeconds);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(this::runClient);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        recording = true;
+        long started = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        recording = false;
+        long elapsedNanos = System.nanoTime() - started;
+        stopped = true;
+        executor.shutdown();
+        executor.awaitTermination(1L, TimeUnit.MINUTES);
+        return report(elapsedNanos);
+    }
+
+    /**
+     * Run a single client until stopped.
+     */
+    private void runClient() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!stopped) {
+            Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+            long started = System.nanoTime();
+            boolean success = execute(operation);
+            if (recording) {
+                latencies.get(operation).recordValue(Math.min(MAX_LATENCY_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started)));
+                if (!success) {
+                    errors.get(operation).increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Execute the given operation.
+     *
+     * @param operation the operation to execute
+     * @return whether the operation succeeded
+     */
+    private boolean execute(@NonNull Operation operation) {
+        try {
+            return switch (operation) {
+                case REGISTER -> {
+                    int id = accountCounter.incrementAndGet();
+                    String email = "loadtest-" + id + "@pulseapp.local";
+                    JsonNode session = authenticate("/v1/auth/register", Map.of(
+                            "email", email,
+                            "username", "loadtest" + id,
+                            "password", PASSWORD,
+                            "passwordConfirmation", PASSWORD,
+                            "captchaResponse", CAPTCHA_RESPONSE
+                    ));
+                    if (session != null) {
+                        Account account = new Account(email);
+                        account.update(session);
+                        accounts.add(account);
+                    }
+                    yield session != null;
+                }
+                case LOGIN -> {
+                    Account account = randomAccount();
+                    JsonNode session = authenticate("/v1/auth/login", Map.of(
+                            "email", account.email,
+                            "password", PASSWORD,
+                            "captchaResponse", CAPTCHA_RESPONSE
+                    ));
+                    if (session != null) {
+                        account.update(session);
+                    }
+                    yield session != null;
+                }
+                case REFRESH -> {
+                    Account account = randomAccount();
+                    JsonNode session;
+                    synchronized (account) { // Refresh tokens are single use
+                        session = authenticate("/v1/auth/refresh", Map.of("refreshToken", account.refreshToken));
+                        if (session != null) {
+                            account.update(session);
+                        }
+                    }
+                    yield session != null;
+                }
+                case ME -> get("/v1/user/@me", randomAccount());
+                case DEVICES -> get("/v1/user/devices", randomAccount());
+                case ORGANIZATIONS -> get("/v1/organization/@me", randomAccount());
+            };
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Register, login, or refresh, returning the session.
+     *
+     * @param path   the auth endpoint
+     * @param fields the form fields
+     * @return the session, null if it failed
+     * @throws Exception if the request fails
+     */
+    private JsonNode authenticate(@NonNull String path, @NonNull Map<String, String> fields) throws Exception {
+        StringJoiner form = new StringJoiner("&");
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            form.add(field.getKey() + "=" + URLEncoder.encode(field.getValue(), StandardCharsets.UTF_8));
+        }
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return null;
+        }
+        JsonNode session = mapper.readTree(response.body()).path("session");
+        return session.path("accessToken").isTextual() && session.path("refreshToken").isTextual() ? session : null;
+    }
+
+    /**
+     * Send an authenticated GET request.
+     *
+     * @param path    the endpoint
+     * @param account the account to authenticate as
+     * @return whether the request succeeded
+     * @throws Exception if the request fails
+     */
+    private boolean get(@NonNull String path, @NonNull Account account) throws Exception {
+        HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + account.accessToken)
+                .GET()
+                .build(), HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() == 200;
+    }
+
+    /**
+     * Get a random registered account.
+     *
+     * @return the account
+     */
+    @NonNull
+    private Account randomAccount() {
+        return accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+    }
+
+    /**
+     * Log the recorded results.
+     *
+     * @param elapsedNanos the time (in nanos) spent recording
+     * @return the error rate (0-1) of the recorded operations
+     */
+    private double report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000D;
+        long totalCount = 0L;
+        long totalErrors = 0L;
+        log.info(String.format("%-14s %10s %8s %10s %9s %9s %9s %9s %9s",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Operation operation : Operation.VALUES) {
+            Histogram histogram = latencies.get(operation);
+            long count = histogram.getTotalCount();
+            long errorCount = errors.get(operation).sum();
+            totalCount += count;
+            totalErrors += errorCount;
+            if (count == 0L) {
+                continue;
+            }
+            log.info(String.format("%-14s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    operation.getId(), count, errorCount, count / seconds,
+                    histogram.getValueAtPercentile(50D) / 1000D, histogram.getValueAtPercentile(90D) / 1000D,
+                    histogram.getValueAtPercentile(99D) / 1000D, histogram.getValueAtPercentile(99.9D) / 1000D,
+                    histogram.getMaxValue() / 1000D));
+        }
+        log.info(String.format("%-14s %10d %8d %10.1f", "total", totalCount, totalErrors, totalCount / seconds));
+        return totalCount == 0L ? 1D : (double) totalErrors / totalCount;
+    }
+
+    /**
+     * A registered account.
+     */
+    @RequiredArgsConstructor
+    private static final class Account {
+        /**
+         * The email of this account.
+         */
+        @NonNull private final String email;
+
+        /**
+         * The latest access token of this account.
+         */
+        private volatile String accessToken;
+
+        /**
+         * The latest refresh token of this account.
+         */
+        private volatile String refreshToken;
+
+        /**
+         * Update the tokens of this account.
+         *
+         * @param session the session returned by the app
+         */
+        private void update(@NonNull JsonNode session) {
+            accessToken = session.path("accessToken").asText();
+            refreshToken = session.path("refreshToken").asText();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cc.pulseapp.api.loadtest;
+
+import cc.pulseapp.api.PulseAPI;
+import de.flapdoodle.embed.mongo.commands.ServerAddress;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import redis.embedded.RedisServer;
+
+import java.net.ServerSocket;
+import java.util.Map;
+
+/**
+ * Boots the app against embedded Mongo and Redis
+ * instances, drives a mix of traffic against it with
+ * a {@link LoadDriver}, and reports the results.
+ * <p>
+ * Captchas and flags are stubbed out by the {@code loadtest}
+ * profile (see {@code application-loadtest.yml}). The process
+ * exits with a non-zero status if the error rate exceeds
+ * {@code loadtest.max-error-rate}, so it can gate CI.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Log4j2(topic = "Load Test")
+public final class LoadTest {
+    @SneakyThrows
+    public static void main(@NonNull String[] args) {
+        int redisPort = findFreePort();
+        RedisServer redis = new RedisServer(redisPort);
+        redis.start();
+        TransitionWalker.ReachedState<RunningMongodProcess> mongo = Mongod.instance().start(Version.Main.V7_0);
+        ServerAddress mongoAddress = mongo.current().getServerAddress();
+        log.info("Started embedded Redis on {} and Mongo on {}", redisPort, mongoAddress);
+
+        int exitCode = 0;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(PulseAPI.class)
+                .profiles("loadtest")
+                .run("--spring.data.mongodb.uri=mongodb://" + mongoAddress.getHost() + ":" + mongoAddress.getPort() + "/pulseapp",
+                        "--spring.data.redis.port=" + redisPort)) {
+            Environment environment = context.getEnvironment();
+            Map<String, Integer> mix = Binder.get(environment).bind("loadtest.mix", Bindable.mapOf(String.class, Integer.class)).orElse(Map.of());
+            LoadDriver driver = new LoadDriver(
+                    "http://127.0.0.1:" + environment.getRequiredProperty("local.server.port"),
+                    environment.getProperty("loadtest.users", Integer.class, 50),
+                    environment.getProperty("loadtest.concurrency", Integer.class, 32),
+                    environment.getProperty("loadtest.warmup-seconds", Integer.class, 10),
+                    environment.getProperty("loadtest.duration-seconds", Integer.class, 60),
+                    mix
+            );
+            double errorRate = driver.run();
+            double maxErrorRate = environment.getProperty("loadtest.max-error-rate", Double.class, 0.01D);
+            if (errorRate > maxErrorRate) {
+                log.error("Error rate of {}% exceeds the max of {}%", errorRate * 100D, maxErrorRate * 100D);
+                exitCode = 1;
+            }
+        } finally {
+            mongo.close();
+            redis.stop();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Find a free local port.
+     *
+     * @return the port
+     */
+    @SneakyThrows
+    private static int findFreePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cc.pulseapp.api.loadtest;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * An operation driven by the {@link LoadDriver}.
+ *
+ * @author Braydon
+ */
+@RequiredArgsConstructor @Getter
+public enum Operation {
+    REGISTER("register"),
+    LOGIN("login"),
+    REFRESH("refresh"),
+    ME("me"),
+    DEVICES("devices"),
+    ORGANIZATIONS("organizations");
+
+    public static final Operation[] VALUES = values();
+
+    /**
+     * The id of this operation in the mix config.
+     */
+    @NonNull private final String id;
+}
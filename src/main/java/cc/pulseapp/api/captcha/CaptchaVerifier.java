@@ -0,0 +1,31 @@
+package cc.pulseapp.api.captcha;
+
+import lombok.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A verifier for captcha response tokens.
+ *
+ * @author Braydon
+ */
+public interface CaptchaVerifier {
+    /**
+     * Get the id of this verifier.
+     *
+     * @return the verifier id
+     */
+    @NonNull String getId();
+
+    /**
+     * Verify the given captcha response token.
+     * <p>
+     * The future completes exceptionally if
+     * the verification couldn't be performed.
+     * </p>
+     *
+     * @param token the token to verify
+     * @return the future of whether the token is valid
+     */
+    @NonNull CompletableFuture<Boolean> verify(@NonNull String token);
+}
@@ -0,0 +1,30 @@
+package cc.pulseapp.api.captcha.impl;
+
+import cc.pulseapp.api.captcha.CaptchaVerifier;
+import lombok.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A local {@link CaptchaVerifier} for development
+ * and testing, accepting every token except
+ * {@link #INVALID_TOKEN}.
+ *
+ * @author Braydon
+ */
+@Component
+public final class StubCaptchaVerifier implements CaptchaVerifier {
+    public static final String ID = "stub";
+    public static final String INVALID_TOKEN = "invalid";
+
+    @Override @NonNull
+    public String getId() {
+        return ID;
+    }
+
+    @Override @NonNull
+    public CompletableFuture<Boolean> verify(@NonNull String token) {
+        return CompletableFuture.completedFuture(!token.equals(INVALID_TOKEN));
+    }
+}
@@ -0,0 +1,80 @@
+package cc.pulseapp.api.captcha.impl;
+
+import cc.pulseapp.api.captcha.CaptchaVerifier;
+import com.google.gson.JsonObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import kong.unirest.core.Unirest;
+import kong.unirest.core.UnirestInstance;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link CaptchaVerifier} backed by Cloudflare Turnstile.
+ *
+ * @author Braydon
+ */
+@Component
+public final class TurnstileCaptchaVerifier implements CaptchaVerifier {
+    public static final String ID = "turnstile";
+    private static final String VERIFY_URL = "https://challenges.cloudflare.com/turnstile/v0/siteverify";
+
+    @Value("${captcha.secret}")
+    private String secretKey;
+
+    /**
+     * The max time (in millis) to wait for a connection.
+     */
+    @Value("${captcha.connect-timeout-millis:1000}")
+    private int connectTimeoutMillis;
+
+    /**
+     * The max time (in millis) to wait for a response.
+     */
+    @Value("${captcha.timeout-millis:3000}")
+    private int timeoutMillis;
+
+    /**
+     * The dedicated Unirest instance to make requests with.
+     */
+    private UnirestInstance unirest;
+
+    @PostConstruct
+    public void onInitialize() {
+        unirest = Unirest.spawnInstance();
+        unirest.config()
+                .connectTimeout(connectTimeoutMillis)
+                .requestTimeout(timeoutMillis);
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        unirest.close();
+    }
+
+    @Override @NonNull
+    public String getId() {
+        return ID;
+    }
+
+    @Override @NonNull
+    public CompletableFuture<Boolean> verify(@NonNull String token) {
+        JsonObject body = new JsonObject();
+        body.addProperty("secret", secretKey);
+        body.addProperty("response", token);
+        return unirest.post(VERIFY_URL)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .body(body)
+                .asJsonAsync()
+                .thenApply(response -> {
+                    if (!response.isSuccess() || response.getBody() == null) { // Upstream failure
+                        throw new IllegalStateException("Turnstile responded with " + response.getStatus());
+                    }
+                    return response.getBody().getObject().optBoolean("success");
+                });
+    }
+}
@@ -0,0 +1,90 @@
+package cc.pulseapp.api.common;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A simple circuit breaker.
+ * <p>
+ * After {@link #failureThreshold} consecutive failures
+ * the circuit opens and requests are rejected for
+ * {@link #openMillis}, after which a single trial
+ * request is let through. A successful trial closes
+ * the circuit, a failed one opens it again.
+ * </p>
+ *
+ * @author Braydon
+ */
+@RequiredArgsConstructor
+public final class CircuitBreaker {
+    /**
+     * The number of consecutive failures before opening.
+     */
+    private final int failureThreshold;
+
+    /**
+     * The time (in millis) to stay open for.
+     */
+    private final long openMillis;
+
+    /**
+     * The number of consecutive failures.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Whether a trial request is in flight.
+     */
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+
+    /**
+     * The time the circuit was opened, -1 if closed.
+     */
+    private volatile long openedAt = -1L;
+
+    /**
+     * Check if a request is allowed through.
+     *
+     * @return whether the request is allowed
+     */
+    public boolean allowRequest() {
+        long opened = openedAt;
+        if (opened == -1L) { // Closed
+            return true;
+        }
+        if (System.currentTimeMillis() - opened < openMillis) { // Still open
+            return false;
+        }
+        return trialInFlight.compareAndSet(false, true); // Half open, let a single trial through
+    }
+
+    /**
+     * Record a successful request.
+     */
+    public void recordSuccess() {
+        failures.set(0);
+        openedAt = -1L;
+        trialInFlight.set(false);
+    }
+
+    /**
+     * Record a failed request.
+     */
+    public void recordFailure() {
+        if (openedAt != -1L || failures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+        }
+        trialInFlight.set(false);
+    }
+
+    /**
+     * Check if the circuit is currently open.
+     *
+     * @return whether the circuit is open
+     */
+    public boolean isOpen() {
+        return openedAt != -1L;
+    }
+}
@@ -0,0 +1,90 @@
+package cc.pulseapp.api.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A local cache whose values are loaded
+ * outside of the underlying {@link Cache}.
+ * <p>
+ * Loading inside the cache holds a lock on the key for
+ * the whole load, so a slow load would block other keys
+ * (or pin a virtual thread). Instead, the generation of
+ * the cache is bumped on every invalidation, and a load
+ * that raced one is discarded after being cached.
+ * </p>
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ * @author Braydon
+ */
+@RequiredArgsConstructor
+public final class GenerationGuardedCache<K, V> {
+    /**
+     * The underlying cache.
+     */
+    @NonNull private final Cache<K, V> cache;
+
+    /**
+     * The generation of the cache, bumped on every invalidation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Get the value of the given key, loading it if it isn't cached.
+     *
+     * @param key    the key to get the value of
+     * @param loader the loader of the value, returning null to not cache anything
+     * @return the value, null if the loader returned null
+     */
+    public V get(@NonNull K key, @NonNull Function<K, V> loader) {
+        V value = cache.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long loadedGeneration = generation.get();
+        value = loader.apply(key);
+        if (value == null) {
+            return null;
+        }
+        cache.put(key, value);
+        if (generation.get() != loadedGeneration) { // Raced an invalidation
+            cache.invalidate(key);
+        }
+        return value;
+    }
+
+    /**
+     * Replace the value of the given key,
+     * discarding any load in flight.
+     *
+     * @param key   the key to replace the value of
+     * @param value the new value
+     */
+    public void put(@NonNull K key, @NonNull V value) {
+        generation.incrementAndGet();
+        cache.put(key, value);
+    }
+
+    /**
+     * Invalidate the given key.
+     *
+     * @param key the key to invalidate
+     */
+    public void invalidate(@NonNull K key) {
+        generation.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    /**
+     * Invalidate every key.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
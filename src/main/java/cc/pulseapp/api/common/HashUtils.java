@@ -6,18 +6,25 @@ import lombok.experimental.UtilityClass;
 
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
 import java.util.Base64;
+import java.util.HexFormat;
 
 /**
  * @author Braydon
  */
 @UtilityClass
 public final class HashUtils {
+    /**
+     * The PBKDF2 iteration count used by {@link #hash(byte[], String)}.
+     */
+    public static final int ITERATION_COUNT = 512000;
+
     private static final SecretKeyFactory PBKDF2;
-    private static final int ITERATION_COUNT = 512000;
     private static final int KEY_LENGTH = 256;
     private static final SecureRandom RANDOM = new SecureRandom();
 
@@ -36,11 +43,52 @@ public final class HashUtils {
      * @param input the input to hash
      * @return the hashed input
      */
-    @SneakyThrows
     public static String hash(byte[] salt, @NonNull String input) {
-        KeySpec spec = new PBEKeySpec(input.toCharArray(), salt, ITERATION_COUNT, KEY_LENGTH);
-        byte[] hash = PBKDF2.generateSecret(spec).getEncoded();
-        return Base64.getEncoder().encodeToString(hash);
+        return Base64.getEncoder().encodeToString(pbkdf2(salt, input, ITERATION_COUNT));
+    }
+
+    /**
+     * Derive a key from the given input
+     * using PBKDF2 with HMAC-SHA256.
+     *
+     * @param salt       the salt to derive with
+     * @param input      the input to derive from
+     * @param iterations the number of iterations
+     * @return the derived key
+     */
+    @SneakyThrows
+    public static byte[] pbkdf2(byte[] salt, @NonNull String input, int iterations) {
+        KeySpec spec = new PBEKeySpec(input.toCharArray(), salt, iterations, KEY_LENGTH);
+        return PBKDF2.generateSecret(spec).getEncoded();
+    }
+
+    /**
+     * Get the SHA-256 digest of the given input.
+     * <p>
+     * This is a fast, unsalted digest meant for deriving
+     * lookup keys from high entropy values (e.g. tokens),
+     * it should never be used for passwords.
+     * </p>
+     *
+     * @param input the input to digest
+     * @return the hex encoded digest
+     * @see #rawDigest(String) for the raw digest
+     */
+    @NonNull
+    public static String digest(@NonNull String input) {
+        return HexFormat.of().formatHex(rawDigest(input));
+    }
+
+    /**
+     * Get the raw SHA-256 digest of the given input.
+     *
+     * @param input the input to digest
+     * @return the digest
+     * @see #digest(String) for usage
+     */
+    @NonNull @SneakyThrows
+    public static byte[] rawDigest(@NonNull String input) {
+        return MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
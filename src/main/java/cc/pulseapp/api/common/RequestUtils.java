@@ -5,6 +5,8 @@ import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import org.springframework.http.HttpHeaders;
 
+import java.util.Enumeration;
+
 /**
  * @author Braydon
  */
@@ -43,6 +45,30 @@ public final class RequestUtils {
         return ip;
     }
 
+    /**
+     * Check if the given entity tag matches
+     * the If-None-Match header of the request.
+     *
+     * @param request the request
+     * @param eTag    the current (strong) entity tag
+     * @return whether the client's copy is up-to-date
+     */
+    public static boolean isNotModified(@NonNull HttpServletRequest request, @NonNull String eTag) {
+        Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (headers != null && headers.hasMoreElements()) {
+            for (String candidate : headers.nextElement().split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) { // If-None-Match uses weak comparison
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(eTag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Get the user agent from the given request.
      *
@@ -0,0 +1,98 @@
+package cc.pulseapp.api.common;
+
+import com.relops.snowflake.Snowflake;
+
+/**
+ * A generator of snowflakes for a single node.
+ * <p>
+ * Snowflakes use the same layout as {@link Snowflake}, that
+ * being the unix time in millis, followed by the node and a
+ * per-millisecond sequence. The timestamp never goes backwards,
+ * if the clock regresses the last timestamp keeps being used,
+ * and once the sequence is exhausted the next millisecond
+ * is borrowed rather than failing.
+ * </p>
+ *
+ * @author Braydon
+ */
+public final class SnowflakeGenerator {
+    public static final int MAX_NODE = (1 << Snowflake.NODE_SHIFT) - 1;
+    private static final long MAX_SEQUENCE = (1L << Snowflake.SEQ_SHIFT) - 1L;
+    private static final int TIMESTAMP_SHIFT = Snowflake.NODE_SHIFT + Snowflake.SEQ_SHIFT;
+
+    /**
+     * The node to generate snowflakes for.
+     */
+    private volatile int node;
+
+    /**
+     * The timestamp of the last generated snowflake.
+     */
+    private long lastTimestamp = -1L;
+
+    /**
+     * The sequence within the last timestamp.
+     */
+    private long sequence;
+
+    public SnowflakeGenerator(int node) {
+        setNode(node);
+    }
+
+    /**
+     * Set the node to generate snowflakes for.
+     *
+     * @param node the node
+     * @throws IllegalArgumentException if the node is out of range
+     */
+    public void setNode(int node) throws IllegalArgumentException {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    /**
+     * Get the node snowflakes are generated for.
+     *
+     * @return the node
+     */
+    public int getNode() {
+        return node;
+    }
+
+    /**
+     * Generate a new snowflake.
+     *
+     * @return the generated snowflake
+     */
+    public synchronized long next() {
+        return nextSnowflake();
+    }
+
+    /**
+     * Generate a batch of new snowflakes.
+     *
+     * @param count the number of snowflakes to generate
+     * @return the generated snowflakes, in ascending order
+     */
+    public synchronized long[] next(int count) {
+        long[] snowflakes = new long[count];
+        for (int i = 0; i < count; i++) {
+            snowflakes[i] = nextSnowflake();
+        }
+        return snowflakes;
+    }
+
+    private long nextSnowflake() {
+        long now = System.currentTimeMillis();
+        if (now > lastTimestamp) { // A new millisecond
+            lastTimestamp = now;
+            sequence = 0L;
+        } else if (++sequence > MAX_SEQUENCE) { // Sequence exhausted (or the clock went back), borrow the next millisecond
+            lastTimestamp++;
+            sequence = 0L;
+        }
+        return lastTimestamp << TIMESTAMP_SHIFT | (long) node << Snowflake.SEQ_SHIFT | sequence;
+    }
+}
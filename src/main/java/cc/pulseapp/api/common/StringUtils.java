@@ -7,6 +7,7 @@ import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 
 import java.security.SecureRandom;
+import java.util.Locale;
 
 /**
  * @author Braydon
@@ -28,6 +29,18 @@ public final class StringUtils {
         return !email.isBlank() && User.EMAIL_PATTERN.matcher(email).matches();
     }
 
+    /**
+     * Normalize the given value for case-insensitive
+     * lookups against a normalized, indexed field.
+     *
+     * @param value the value to normalize
+     * @return the normalized value
+     */
+    @NonNull
+    public static String normalize(@NonNull String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Check if the given username is valid.
      *
@@ -0,0 +1,60 @@
+package cc.pulseapp.api.common;
+
+/**
+ * A simple token bucket.
+ * <p>
+ * The bucket holds up to {@link #capacity} tokens
+ * and refills continuously at {@link #refillPerMilli}
+ * tokens per millisecond, every acquire takes a token.
+ * </p>
+ *
+ * @author Braydon
+ */
+public final class TokenBucket {
+    /**
+     * The max number of tokens the bucket holds.
+     */
+    private final double capacity;
+
+    /**
+     * The number of tokens added per millisecond.
+     */
+    private final double refillPerMilli;
+
+    /**
+     * The number of tokens in the bucket.
+     */
+    private double tokens;
+
+    /**
+     * The time (in millis) the bucket was last refilled.
+     */
+    private long lastRefill;
+
+    public TokenBucket(int capacity, long refillMillis) {
+        this.capacity = capacity;
+        this.refillPerMilli = (double) capacity / refillMillis;
+        this.tokens = capacity;
+        this.lastRefill = System.currentTimeMillis();
+    }
+
+    /**
+     * Attempt to take a token from the bucket.
+     * <p>
+     * The lock is only held for the arithmetic,
+     * so it never blocks on anything else.
+     * </p>
+     *
+     * @return whether a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+        lastRefill = now;
+        if (tokens < 1D) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+}
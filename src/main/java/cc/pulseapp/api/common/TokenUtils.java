@@ -0,0 +1,47 @@
+package cc.pulseapp.api.common;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Tokens are the snowflake of the session they belong
+ * to and a random secret, separated by a {@code .}, so
+ * the session can be addressed directly by its key.
+ *
+ * @author Braydon
+ */
+@UtilityClass
+public final class TokenUtils {
+    private static final char SEPARATOR = '.';
+    private static final int SECRET_LENGTH = 96;
+
+    /**
+     * Generate a token for the given session.
+     *
+     * @param sessionSnowflake the snowflake of the session
+     * @return the generated token
+     */
+    @NonNull
+    public static String generateToken(long sessionSnowflake) {
+        return Long.toString(sessionSnowflake) + SEPARATOR + StringUtils.generateRandom(SECRET_LENGTH, true, true, false);
+    }
+
+    /**
+     * Get the snowflake of the session the given token belongs to.
+     *
+     * @param token the token
+     * @return the session snowflake, -1 if the token has none (e.g. a legacy token)
+     */
+    public static long getSessionSnowflake(@NonNull String token) {
+        int separator = token.indexOf(SEPARATOR);
+        if (separator < 1 || separator > 19) { // Longs are at most 19 digits
+            return -1L;
+        }
+        try {
+            long snowflake = Long.parseLong(token, 0, separator, 10);
+            return snowflake < 0L ? -1L : snowflake;
+        } catch (NumberFormatException ex) {
+            return -1L;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package cc.pulseapp.api.config;
 import lombok.NonNull;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -20,7 +21,8 @@ public class AppConfig {
                 registry.addMapping("/**")
                         .allowedOrigins("*") // Allow all origins
                         .allowedMethods("*") // Allow all methods
-                        .allowedHeaders("*"); // Allow all headers
+                        .allowedHeaders("*") // Allow all headers
+                        .exposedHeaders(HttpHeaders.ETAG); // Allow clients to revalidate with If-None-Match
             }
         };
     }
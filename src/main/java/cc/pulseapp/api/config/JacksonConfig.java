@@ -0,0 +1,59 @@
+package cc.pulseapp.api.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Braydon
+ */
+@Configuration
+@Log4j2(topic = "Jackson")
+public class JacksonConfig {
+    /**
+     * Whether requests are served on virtual threads.
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * Serialize (and deserialize) with generated accessors
+     * instead of reflection over every getter.
+     * <p>
+     * Spring Boot installs every {@link Module} bean
+     * on the auto-configured object mapper.
+     * </p>
+     *
+     * @return the module
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    /**
+     * Pool the buffers responses are written with.
+     * <p>
+     * Jackson keeps its buffers per thread by default, which
+     * are never reused when every request gets a new virtual
+     * thread, so a shared pool is used instead.
+     * </p>
+     *
+     * @return the customizer
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer recyclerPoolCustomizer() {
+        return builder -> {
+            if (virtualThreads) {
+                builder.factory(JsonFactory.builder().recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool()).build());
+                log.info("Pooling Jackson buffers across virtual threads");
+            }
+        };
+    }
+}
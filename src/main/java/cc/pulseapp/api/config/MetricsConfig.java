@@ -0,0 +1,28 @@
+package cc.pulseapp.api.config;
+
+import cc.pulseapp.api.metrics.MongoTimingListener;
+import cc.pulseapp.api.service.MetricsService;
+import lombok.NonNull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Braydon
+ */
+@Configuration
+@ConditionalOnProperty(value = "questdb.enabled", havingValue = "true")
+public class MetricsConfig {
+    /**
+     * Time every Mongo command.
+     *
+     * @param metricsService the service to record with
+     * @return the customizer
+     * @see MongoTimingListener for listener
+     */
+    @Bean @NonNull
+    public MongoClientSettingsBuilderCustomizer mongoTimingCustomizer(@NonNull MetricsService metricsService) {
+        return builder -> builder.addCommandListener(new MongoTimingListener(metricsService));
+    }
+}
@@ -1,13 +1,28 @@
 package cc.pulseapp.api.config;
 
+import cc.pulseapp.api.metrics.RedisPoolMetrics;
+import cc.pulseapp.api.metrics.RedisTimingProxy;
+import cc.pulseapp.api.service.MetricsService;
 import lombok.NonNull;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
 
 /**
  * @author Braydon
@@ -15,6 +30,8 @@ import org.springframework.data.redis.core.RedisTemplate;
 @Configuration
 @Log4j2(topic = "Redis")
 public class RedisConfig {
+    private static final String POOL_JMX_PREFIX = "redis";
+
     /**
      * The Redis server host.
      */
@@ -39,6 +56,82 @@ public class RedisConfig {
     @Value("${spring.data.redis.auth}")
     private String auth;
 
+    /**
+     * The client to connect with, "jedis" or "lettuce".
+     */
+    @Value("${redis.client:jedis}")
+    private String client;
+
+    /**
+     * The max time (in millis) to wait for a connection or command.
+     */
+    @Value("${redis.timeout-millis:2000}")
+    private long timeoutMillis;
+
+    /**
+     * The max number of pooled connections.
+     */
+    @Value("${redis.pool.max-total:64}")
+    private int poolMaxTotal;
+
+    /**
+     * The max number of idle pooled connections.
+     */
+    @Value("${redis.pool.max-idle:64}")
+    private int poolMaxIdle;
+
+    /**
+     * The min number of idle pooled connections to keep warm.
+     */
+    @Value("${redis.pool.min-idle:8}")
+    private int poolMinIdle;
+
+    /**
+     * The max time (in millis) to wait for a pooled connection.
+     */
+    @Value("${redis.pool.max-wait-millis:2000}")
+    private long poolMaxWaitMillis;
+
+    /**
+     * Whether to validate connections when borrowing them.
+     */
+    @Value("${redis.pool.test-on-borrow:false}")
+    private boolean poolTestOnBorrow;
+
+    /**
+     * Whether to validate idle connections during eviction runs.
+     */
+    @Value("${redis.pool.test-while-idle:true}")
+    private boolean poolTestWhileIdle;
+
+    /**
+     * The time (in millis) between idle eviction runs.
+     */
+    @Value("${redis.pool.time-between-eviction-runs-millis:30000}")
+    private long poolEvictionIntervalMillis;
+
+    /**
+     * The min time (in millis) a connection can be idle before being evicted.
+     */
+    @Value("${redis.pool.min-evictable-idle-millis:60000}")
+    private long poolMinEvictableIdleMillis;
+
+    /**
+     * Whether requests are served on virtual threads.
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * The service to record command timings with.
+     */
+    @NonNull private final MetricsService metricsService;
+
+    @Autowired
+    public RedisConfig(@NonNull MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
     /**
      * Build the config to use for Redis.
      *
@@ -47,27 +140,123 @@ public class RedisConfig {
      */
     @Bean @NonNull
     public RedisTemplate<String, Object> redisTemplate() {
-        RedisTemplate<String, Object> template = new RedisTemplate<>();
-        template.setConnectionFactory(jedisConnectionFactory());
+        RedisTemplate<String, Object> template = !metricsService.isEnabled() ? new RedisTemplate<>() : new RedisTemplate<>() {
+            @Override @NonNull
+            protected RedisConnection preProcessConnection(@NonNull RedisConnection connection, boolean existingConnection) {
+                return RedisTimingProxy.wrap(connection, metricsService);
+            }
+        };
+        template.setConnectionFactory(redisConnectionFactory());
         return template;
     }
 
+    /**
+     * Build the template to use for plain
+     * string operations, such as pub/sub.
+     *
+     * @return the string template
+     * @see StringRedisTemplate for template
+     */
+    @Bean @NonNull
+    public StringRedisTemplate stringRedisTemplate() {
+        if (!metricsService.isEnabled()) {
+            return new StringRedisTemplate(redisConnectionFactory());
+        }
+        return new StringRedisTemplate(redisConnectionFactory()) {
+            @Override @NonNull
+            protected RedisConnection preProcessConnection(@NonNull RedisConnection connection, boolean existingConnection) {
+                return super.preProcessConnection(RedisTimingProxy.wrap(connection, metricsService), existingConnection);
+            }
+        };
+    }
+
+    /**
+     * Build the container to use for
+     * listening to pub/sub messages.
+     *
+     * @return the listener container
+     * @see RedisMessageListenerContainer for container
+     */
+    @Bean @NonNull
+    public RedisMessageListenerContainer redisMessageListenerContainer() {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory());
+        if (virtualThreads) { // Dispatch messages on virtual threads too
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("redis-listener-");
+            executor.setVirtualThreads(true);
+            container.setTaskExecutor(executor);
+        }
+        return container;
+    }
+
     /**
      * Build the connection factory to use
      * when making connections to Redis.
      *
      * @return the built factory
-     * @see JedisConnectionFactory for factory
+     * @see JedisConnectionFactory for jedis factory
+     * @see LettuceConnectionFactory for lettuce factory
      */
     @Bean @NonNull
-    public JedisConnectionFactory jedisConnectionFactory() {
-        log.info("Connecting to Redis at {}:{}/{}", host, port, database);
+    public RedisConnectionFactory redisConnectionFactory() {
+        log.info("Connecting to Redis at {}:{}/{} with {}", host, port, database, client);
         RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(host, port);
         config.setDatabase(database);
         if (!auth.trim().isEmpty()) { // Auth with our provided password
             log.info("Using auth...");
             config.setPassword(auth);
         }
-        return new JedisConnectionFactory(config);
+        Duration timeout = Duration.ofMillis(timeoutMillis);
+        return switch (client) {
+            case "jedis" -> new JedisConnectionFactory(config, JedisClientConfiguration.builder()
+                    .connectTimeout(timeout)
+                    .readTimeout(timeout)
+                    .usePooling().poolConfig(buildPoolConfig())
+                    .build());
+            case "lettuce" -> new LettuceConnectionFactory(config, LettucePoolingClientConfiguration.builder()
+                    .commandTimeout(timeout)
+                    .poolConfig(buildPoolConfig())
+                    .build());
+            default -> throw new IllegalStateException("Unknown Redis client: " + client);
+        };
+    }
+
+    /**
+     * Export the metrics of the connection pool.
+     *
+     * @return the metrics binder
+     * @see RedisPoolMetrics for metrics
+     */
+    @Bean @NonNull
+    public RedisPoolMetrics redisPoolMetrics() {
+        return new RedisPoolMetrics(POOL_JMX_PREFIX);
+    }
+
+    /**
+     * Build the config for the connection pool.
+     * <p>
+     * Waiting for a pooled connection parks on a lock rather than a monitor,
+     * so many (virtual) threads can queue for a small pool without pinning.
+     * The pool is registered with JMX so {@link RedisPoolMetrics} can read it.
+     * </p>
+     *
+     * @param <T> the type of pooled connection
+     * @return the pool config
+     */
+    @NonNull
+    private <T> GenericObjectPoolConfig<T> buildPoolConfig() {
+        GenericObjectPoolConfig<T> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(poolMaxTotal);
+        poolConfig.setMaxIdle(poolMaxIdle);
+        poolConfig.setMinIdle(poolMinIdle);
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWait(Duration.ofMillis(poolMaxWaitMillis));
+        poolConfig.setTestOnBorrow(poolTestOnBorrow);
+        poolConfig.setTestWhileIdle(poolTestWhileIdle);
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofMillis(poolEvictionIntervalMillis));
+        poolConfig.setMinEvictableIdleDuration(Duration.ofMillis(poolMinEvictableIdleMillis));
+        poolConfig.setJmxEnabled(true);
+        poolConfig.setJmxNamePrefix(POOL_JMX_PREFIX);
+        return poolConfig;
     }
 }
\ No newline at end of file
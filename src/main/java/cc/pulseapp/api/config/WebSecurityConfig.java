@@ -1,8 +1,11 @@
 package cc.pulseapp.api.config;
 
+import cc.pulseapp.api.metrics.RequestMetricsFilter;
 import cc.pulseapp.api.model.IGenericResponse;
+import cc.pulseapp.api.model.user.session.AccessToken;
 import cc.pulseapp.api.model.user.session.Session;
-import cc.pulseapp.api.repository.SessionRepository;
+import cc.pulseapp.api.service.AccessTokenService;
+import cc.pulseapp.api.service.SessionService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,20 +33,26 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 @Order(Ordered.HIGHEST_PRECEDENCE)
 public class WebSecurityConfig {
     /**
-     * The session repository to use.
+     * The service to verify access tokens with.
      */
-    @NonNull private final SessionRepository sessionRepository;
+    @NonNull private final AccessTokenService accessTokenService;
+
+    /**
+     * The session service to use.
+     */
+    @NonNull private final SessionService sessionService;
 
     @Autowired
-    public WebSecurityConfig(@NonNull SessionRepository sessionRepository) {
-        this.sessionRepository = sessionRepository;
+    public WebSecurityConfig(@NonNull AccessTokenService accessTokenService, @NonNull SessionService sessionService) {
+        this.accessTokenService = accessTokenService;
+        this.sessionService = sessionService;
     }
 
     @Bean @NonNull
     public SecurityFilterChain filterChain(@NonNull HttpSecurity http) throws Exception {
         SessionFilter filter = new SessionFilter();
         filter.setAuthenticationManager(authentication -> {
-            Session authToken = (Session) authentication.getCredentials();
+            AccessToken authToken = (AccessToken) authentication.getCredentials();
             if (authToken == null) { // No API key found
                 throw new BadCredentialsException(Error.INVALID_ACCESS_TOKEN.name());
             }
@@ -61,6 +70,7 @@ public class WebSecurityConfig {
                         .requestMatchers(AntPathRequestMatcher.antMatcher("/error")).permitAll()
                         .requestMatchers(AntPathRequestMatcher.antMatcher("/v*/auth/register")).permitAll()
                         .requestMatchers(AntPathRequestMatcher.antMatcher("/v*/auth/login")).permitAll()
+                        .requestMatchers(AntPathRequestMatcher.antMatcher("/v*/auth/refresh")).permitAll()
                         .requestMatchers(AntPathRequestMatcher.antMatcher("/v*/user/exists")).permitAll()
                         .anyRequest().authenticated())
                 .exceptionHandling(exceptionHandling -> exceptionHandling
@@ -76,7 +86,12 @@ public class WebSecurityConfig {
 
     /**
      * The filter for authenticating
-     * requests with an {@link Session}.
+     * requests with an {@link AccessToken}.
+     * <p>
+     * Signed access tokens are verified locally, the
+     * long-lived access tokens issued before them are
+     * still resolved through their {@link Session}.
+     * </p>
      *
      * @author Braydon
      */
@@ -87,12 +102,21 @@ public class WebSecurityConfig {
         }
 
         @Override
-        protected Session getPreAuthenticatedCredentials(@NonNull HttpServletRequest request) {
-            String accessToken = getPreAuthenticatedPrincipal(request); // Get the provided access token
-            if (accessToken == null || !accessToken.startsWith("Bearer ")) {
+        protected AccessToken getPreAuthenticatedCredentials(@NonNull HttpServletRequest request) {
+            String header = getPreAuthenticatedPrincipal(request); // Get the provided access token
+            if (header == null || !header.startsWith("Bearer ")) {
                 return null;
             }
-            return sessionRepository.findByAccessToken(accessToken.substring(7));
+            String token = header.substring(7);
+            AccessToken accessToken;
+            if (accessTokenService.isSigned(token)) {
+                accessToken = accessTokenService.verify(token);
+            } else {
+                Session session = sessionService.getSessionByAccessToken(token);
+                accessToken = session == null ? null : AccessToken.fromSession(session);
+            }
+            request.setAttribute(RequestMetricsFilter.AUTH_OUTCOME_ATTRIBUTE, accessToken == null ? "rejected" : "authenticated");
+            return accessToken;
         }
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package cc.pulseapp.api.controller.v1;
 
 import cc.pulseapp.api.exception.impl.BadRequestException;
 import cc.pulseapp.api.model.user.User;
+import cc.pulseapp.api.model.user.input.SessionRefreshInput;
 import cc.pulseapp.api.model.user.input.UserLoginInput;
 import cc.pulseapp.api.model.user.input.UserRegistrationInput;
 import cc.pulseapp.api.model.user.response.UserAuthResponse;
@@ -60,4 +61,17 @@ public final class AuthController {
     public ResponseEntity<UserAuthResponse> login(@NonNull HttpServletRequest request, UserLoginInput input) throws BadRequestException {
         return ResponseEntity.ok(authService.loginUser(request, input));
     }
+
+    /**
+     * A POST endpoint to refresh a session.
+     *
+     * @param request the http request
+     * @param input   the refresh input
+     * @return the user auth response
+     * @throws BadRequestException if the refresh fails
+     */
+    @PostMapping("/refresh") @ResponseBody @NonNull
+    public ResponseEntity<UserAuthResponse> refresh(@NonNull HttpServletRequest request, SessionRefreshInput input) throws BadRequestException {
+        return ResponseEntity.ok(authService.refreshSession(request, input));
+    }
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package cc.pulseapp.api.controller.v1;
 
+import cc.pulseapp.api.common.RequestUtils;
 import cc.pulseapp.api.model.org.DetailedOrganization;
 import cc.pulseapp.api.model.org.Organization;
 import cc.pulseapp.api.service.OrganizationService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -23,6 +27,12 @@ import java.util.List;
 @RestController
 @RequestMapping(value = "/v1/organization", produces = MediaType.APPLICATION_JSON_VALUE)
 public final class OrganizationController {
+    /**
+     * Let clients keep a private copy, as long as
+     * they revalidate it with its entity tag.
+     */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     /**
      * The organization service to use.
      */
@@ -36,11 +46,23 @@ public final class OrganizationController {
     /**
      * A GET endpoint to get the
      * organizations of a user.
+     * <p>
+     * A request with an up-to-date If-None-Match gets a
+     * 304 without the organizations being read from Mongo.
+     * </p>
      *
+     * @param request the http request
      * @return the organizations
      */
     @GetMapping("/@me") @ResponseBody @NonNull
-    public ResponseEntity<List<DetailedOrganization>> getOrganizations() {
-        return ResponseEntity.ok(orgService.getOrganizations());
+    public ResponseEntity<List<DetailedOrganization>> getOrganizations(@NonNull HttpServletRequest request) {
+        String eTag = orgService.getOrganizationsETag();
+        if (eTag == null) { // Versions are unavailable, always respond in full
+            return ResponseEntity.ok(orgService.getOrganizations());
+        }
+        if (RequestUtils.isNotModified(request, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(orgService.getOrganizations());
     }
 }
\ No newline at end of file
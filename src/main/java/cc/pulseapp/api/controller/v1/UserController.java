@@ -1,5 +1,6 @@
 package cc.pulseapp.api.controller.v1;
 
+import cc.pulseapp.api.common.RequestUtils;
 import cc.pulseapp.api.exception.impl.BadRequestException;
 import cc.pulseapp.api.model.user.User;
 import cc.pulseapp.api.model.user.UserDTO;
@@ -10,8 +11,11 @@ import cc.pulseapp.api.model.user.input.EnableTFAInput;
 import cc.pulseapp.api.model.user.input.UserExistsInput;
 import cc.pulseapp.api.model.user.response.UserSetupTFAResponse;
 import cc.pulseapp.api.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -28,6 +32,12 @@ import java.util.Map;
 @RestController
 @RequestMapping(value = "/v1/user", produces = MediaType.APPLICATION_JSON_VALUE)
 public final class UserController {
+    /**
+     * Let clients keep a private copy, as long as
+     * they revalidate it with its entity tag.
+     */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     /**
      * The user service to use.
      */
@@ -41,24 +51,34 @@ public final class UserController {
     /**
      * A GET endpoint to get the
      * currently authenticated user.
+     * <p>
+     * A request with an up-to-date If-None-Match
+     * gets a 304 without the user being serialized.
+     * </p>
      *
+     * @param request the http request
      * @return the currently authenticated user
      */
     @GetMapping("/@me") @ResponseBody @NonNull
-    public ResponseEntity<UserDTO> getUser() {
-        return ResponseEntity.ok(userService.getUser());
+    public ResponseEntity<UserDTO> getUser(@NonNull HttpServletRequest request) {
+        String eTag = userService.getUserETag();
+        if (RequestUtils.isNotModified(request, eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATE).body(userService.getUser());
     }
 
     /**
      * A GET endpoint to check if a
      * user exists with the given email.
      *
-     * @param input the input to check
+     * @param request the http request
+     * @param input   the input to check
      * @return the response
      */
     @PostMapping("/exists") @ResponseBody @NonNull
-    public ResponseEntity<Map<String, Object>> doesUserExist(UserExistsInput input) {
-        return ResponseEntity.ok(Map.of("exists", userService.doesUserExist(input)));
+    public ResponseEntity<Map<String, Object>> doesUserExist(@NonNull HttpServletRequest request, UserExistsInput input) {
+        return ResponseEntity.ok(Map.of("exists", userService.doesUserExist(request, input)));
     }
 
     /**
@@ -0,0 +1,19 @@
+package cc.pulseapp.api.exception.impl;
+
+import cc.pulseapp.api.model.IGenericResponse;
+import lombok.NonNull;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception is raised when a request
+ * can't be served due to a lack of capacity.
+ *
+ * @author Braydon
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public final class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(@NonNull IGenericResponse error) {
+        super(error.name());
+    }
+}
@@ -0,0 +1,19 @@
+package cc.pulseapp.api.exception.impl;
+
+import cc.pulseapp.api.model.IGenericResponse;
+import lombok.NonNull;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception is raised when a
+ * client has made too many requests.
+ *
+ * @author Braydon
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public final class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(@NonNull IGenericResponse error) {
+        super(error.name());
+    }
+}
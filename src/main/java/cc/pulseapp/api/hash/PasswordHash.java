@@ -0,0 +1,130 @@
+package cc.pulseapp.api.hash;
+
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.hash.impl.Pbkdf2PasswordHasher;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * A self-describing password hash.
+ * <p>
+ * Hashes are encoded as {@code $algorithm$cost$salt$digest},
+ * with the salt and digest being Base64 encoded. Hashes
+ * stored before this format existed are bare Base64
+ * PBKDF2 digests with a separately stored salt, these
+ * are read as {@link #legacy(String, String)} hashes.
+ * </p>
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE) @Getter
+public final class PasswordHash {
+    private static final Base64.Encoder ENCODER = Base64.getEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+    /**
+     * The algorithm of this hash.
+     */
+    @NonNull private final String algorithm;
+
+    /**
+     * The algorithm specific cost of this hash.
+     */
+    private final int cost;
+
+    /**
+     * The salt of this hash.
+     */
+    private final byte[] salt;
+
+    /**
+     * The digest of this hash.
+     */
+    private final byte[] digest;
+
+    /**
+     * Whether this is a legacy hash.
+     */
+    private final boolean legacy;
+
+    /**
+     * Create a new hash.
+     *
+     * @param algorithm the algorithm of the hash
+     * @param cost      the cost of the hash
+     * @param salt      the salt of the hash
+     * @param digest    the digest of the hash
+     * @return the hash
+     */
+    @NonNull
+    public static PasswordHash of(@NonNull String algorithm, int cost, byte[] salt, byte[] digest) {
+        return new PasswordHash(algorithm, cost, salt, digest, false);
+    }
+
+    /**
+     * Create a hash from a legacy digest and salt.
+     *
+     * @param digest the Base64 encoded digest
+     * @param salt   the Base64 encoded salt
+     * @return the hash
+     */
+    @NonNull
+    public static PasswordHash legacy(@NonNull String digest, @NonNull String salt) {
+        return new PasswordHash(Pbkdf2PasswordHasher.ALGORITHM, HashUtils.ITERATION_COUNT, DECODER.decode(salt), DECODER.decode(digest), true);
+    }
+
+    /**
+     * Check if the given value is an encoded hash.
+     *
+     * @param value the value to check
+     * @return whether the value is encoded
+     */
+    public static boolean isEncoded(@NonNull String value) {
+        return value.startsWith("$");
+    }
+
+    /**
+     * Decode the given encoded hash.
+     *
+     * @param encoded the encoded hash
+     * @return the decoded hash
+     * @throws IllegalArgumentException if the hash is malformed
+     */
+    @NonNull
+    public static PasswordHash decode(@NonNull String encoded) throws IllegalArgumentException {
+        String[] parts = encoded.split("\\$");
+        if (parts.length != 5 || !parts[0].isEmpty()) {
+            throw new IllegalArgumentException("Malformed password hash");
+        }
+        return of(parts[1], Integer.parseInt(parts[2]), DECODER.decode(parts[3]), DECODER.decode(parts[4]));
+    }
+
+    /**
+     * Check if the given digest matches
+     * the digest of this hash.
+     * <p>
+     * The comparison is done in constant time.
+     * </p>
+     *
+     * @param otherDigest the digest to check
+     * @return whether the digests match
+     */
+    public boolean matches(byte[] otherDigest) {
+        return MessageDigest.isEqual(digest, otherDigest);
+    }
+
+    /**
+     * Encode this hash.
+     *
+     * @return the encoded hash
+     */
+    @NonNull
+    public String encode() {
+        return "$" + algorithm + "$" + cost + "$" + ENCODER.encodeToString(salt) + "$" + ENCODER.encodeToString(digest);
+    }
+}
@@ -0,0 +1,31 @@
+package cc.pulseapp.api.hash;
+
+import lombok.NonNull;
+
+/**
+ * A hasher for deriving {@link PasswordHash}'s.
+ *
+ * @author Braydon
+ */
+public interface PasswordHasher {
+    /**
+     * Get the id of the algorithm of this hasher.
+     * <p>
+     * This is stored as part of every encoded
+     * hash and must never change once used.
+     * </p>
+     *
+     * @return the algorithm id
+     */
+    @NonNull String getAlgorithm();
+
+    /**
+     * Derive a digest from the given input.
+     *
+     * @param salt  the salt to derive with
+     * @param input the input to derive from
+     * @param cost  the algorithm specific cost
+     * @return the derived digest
+     */
+    byte[] derive(byte[] salt, @NonNull String input, int cost);
+}
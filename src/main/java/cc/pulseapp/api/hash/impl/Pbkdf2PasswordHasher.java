@@ -0,0 +1,27 @@
+package cc.pulseapp.api.hash.impl;
+
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.hash.PasswordHasher;
+import lombok.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * A {@link PasswordHasher} using PBKDF2 with HMAC-SHA256,
+ * the cost being the number of iterations.
+ *
+ * @author Braydon
+ */
+@Component
+public final class Pbkdf2PasswordHasher implements PasswordHasher {
+    public static final String ALGORITHM = "pbkdf2-sha256";
+
+    @Override @NonNull
+    public String getAlgorithm() {
+        return ALGORITHM;
+    }
+
+    @Override
+    public byte[] derive(byte[] salt, @NonNull String input, int cost) {
+        return HashUtils.pbkdf2(salt, input, cost);
+    }
+}
@@ -0,0 +1,187 @@
+package cc.pulseapp.api.log;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A preallocated, bounded ring buffer of {@link Entry}'s.
+ * <p>
+ * Any number of threads can publish entries, while a single
+ * thread drains them. Slots are allocated up-front and reused,
+ * so publishing only copies a few references and primitives.
+ * When the buffer is full, new entries are dropped rather than
+ * blocking the publishing (request) thread.
+ * </p>
+ *
+ * @author Braydon
+ */
+public final class AccessLogBuffer {
+    /**
+     * The preallocated slots of this buffer.
+     */
+    @NonNull private final Entry[] slots;
+
+    /**
+     * The mask to map a sequence to its slot.
+     */
+    private final int mask;
+
+    /**
+     * The next sequence to be claimed by a publisher.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next sequence to be drained.
+     */
+    private volatile long head;
+
+    /**
+     * The number of entries dropped because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Create a new buffer.
+     *
+     * @param capacity the capacity, rounded up to a power of two
+     */
+    public AccessLogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Entry();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Publish an entry to this buffer.
+     *
+     * @param timestamp    the time (in millis) the request was received
+     * @param ip           the ip of the requester
+     * @param method       the request method
+     * @param uri          the request uri
+     * @param protocol     the request protocol
+     * @param status       the response status
+     * @param latencyNanos the time (in nanos) taken to respond
+     * @param bytes        the number of response body bytes written
+     * @return whether the entry was published, false if the buffer was full
+     */
+    public boolean publish(long timestamp, String ip, String method, String uri, String protocol, int status, long latencyNanos, long bytes) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head >= slots.length) { // Full, drop the entry
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1L));
+
+        Entry entry = slots[(int) (sequence & mask)];
+        entry.timestamp = timestamp;
+        entry.ip = ip;
+        entry.method = method;
+        entry.uri = uri;
+        entry.protocol = protocol;
+        entry.status = status;
+        entry.latencyNanos = latencyNanos;
+        entry.bytes = bytes;
+        entry.sequence = sequence; // Publish the entry to the drainer
+        return true;
+    }
+
+    /**
+     * Drain the published entries from this buffer.
+     * <p>
+     * This must only be called from a single thread.
+     * The entries handed to the consumer are reused,
+     * and must not be held onto.
+     * </p>
+     *
+     * @param consumer the consumer of the entries
+     * @param maxBatch the max number of entries to drain
+     * @return the number of entries drained
+     */
+    public int drain(@NonNull Consumer<Entry> consumer, int maxBatch) {
+        long next = head;
+        int drained = 0;
+        while (drained < maxBatch) {
+            Entry entry = slots[(int) (next & mask)];
+            if (entry.sequence != next) { // Not published yet
+                break;
+            }
+            consumer.accept(entry);
+            entry.ip = entry.method = entry.uri = entry.protocol = null;
+            head = ++next; // Free up the slot
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Get the number of entries dropped
+     * because this buffer was full.
+     *
+     * @return the dropped entries
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * A single access log entry.
+     */
+    @Getter
+    public static final class Entry {
+        /**
+         * The sequence this entry was published
+         * at, -1 if it was never published.
+         */
+        @Getter(AccessLevel.NONE) private volatile long sequence = -1L;
+
+        /**
+         * The time (in millis) the request was received.
+         */
+        private long timestamp;
+
+        /**
+         * The ip of the requester.
+         */
+        private String ip;
+
+        /**
+         * The request method.
+         */
+        private String method;
+
+        /**
+         * The request uri.
+         */
+        private String uri;
+
+        /**
+         * The request protocol.
+         */
+        private String protocol;
+
+        /**
+         * The response status.
+         */
+        private int status;
+
+        /**
+         * The time (in nanos) taken to respond.
+         */
+        private long latencyNanos;
+
+        /**
+         * The number of response body bytes written.
+         */
+        private long bytes;
+    }
+}
@@ -0,0 +1,364 @@
+package cc.pulseapp.api.log;
+
+import cc.pulseapp.api.common.RequestUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Responsible for logging every request and
+ * response transaction to the terminal.
+ * <p>
+ * This runs before every other filter (including security),
+ * so rejected and errored requests are logged too. The request
+ * thread only records the raw details of the transaction into
+ * an {@link AccessLogBuffer}, formatting and writing is done in
+ * batches by a background writer thread.
+ * </p>
+ * <p>
+ * A request whose error page is rendered in an error dispatch
+ * (an error was sent, or an exception escaped the chain) is only
+ * published once the error dispatch completes, so its final status
+ * and the bytes of the error page are logged.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Component @Order(Ordered.HIGHEST_PRECEDENCE)
+@Log4j2(topic = "HTTP Request")
+public final class AccessLogFilter extends OncePerRequestFilter {
+    /**
+     * The request attribute a transaction waiting
+     * for its error dispatch is stored under.
+     */
+    private static final String TRANSACTION_ATTRIBUTE = AccessLogFilter.class.getName() + ".transaction";
+
+    /**
+     * The number of entries the buffer can hold.
+     */
+    @Value("${access-log.buffer-size:8192}")
+    private int bufferSize;
+
+    /**
+     * The max number of entries to write per batch.
+     */
+    @Value("${access-log.batch-size:256}")
+    private int batchSize;
+
+    /**
+     * The time (in millis) to wait between batches when idle.
+     */
+    @Value("${access-log.flush-interval-millis:50}")
+    private long flushIntervalMillis;
+
+    /**
+     * The registry to publish metrics to.
+     */
+    @NonNull private final MeterRegistry meterRegistry;
+
+    /**
+     * The buffer to record entries into.
+     */
+    private AccessLogBuffer buffer;
+
+    /**
+     * The thread writing entries from the buffer.
+     */
+    private Thread writer;
+
+    /**
+     * Whether the writer is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The builder to format entries with, only used by the writer.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    @Autowired
+    public AccessLogFilter(@NonNull MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        buffer = new AccessLogBuffer(bufferSize);
+        FunctionCounter.builder("access_log.dropped", buffer, AccessLogBuffer::getDropped)
+                .description("Access log entries dropped because the buffer was full")
+                .register(meterRegistry);
+        running = true;
+        writer = new Thread(this::runWriter, "Access Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void onShutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5L));
+    }
+
+    @Override
+    protected boolean shouldNotFilterErrorDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        if (request.getDispatcherType() == DispatcherType.ERROR) {
+            Transaction transaction = (Transaction) request.getAttribute(TRANSACTION_ATTRIBUTE);
+            if (transaction == null) { // Not waiting on this dispatch
+                chain.doFilter(request, response);
+                return;
+            }
+            request.removeAttribute(TRANSACTION_ATTRIBUTE);
+            CountingResponse countingResponse = new CountingResponse(response, transaction);
+            try {
+                chain.doFilter(request, countingResponse);
+            } finally {
+                countingResponse.flushWriter();
+                publish(transaction, countingResponse.getStatus());
+            }
+            return;
+        }
+        Transaction transaction = new Transaction(System.currentTimeMillis(), System.nanoTime(), RequestUtils.getRealIp(request),
+                request.getMethod(), request.getRequestURI(), request.getProtocol());
+        CountingResponse countingResponse = new CountingResponse(response, transaction);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, countingResponse);
+            failed = false;
+        } finally {
+            countingResponse.flushWriter();
+            // The error page is rendered in an error dispatch, unless the response was already committed
+            if (failed ? !response.isCommitted() : countingResponse.errorSent) {
+                request.setAttribute(TRANSACTION_ATTRIBUTE, transaction);
+            } else {
+                publish(transaction, countingResponse.getStatus());
+            }
+        }
+    }
+
+    /**
+     * Publish the given transaction to the buffer.
+     *
+     * @param transaction the transaction to publish
+     * @param status      the final status of the response
+     */
+    private void publish(@NonNull Transaction transaction, int status) {
+        buffer.publish(transaction.timestamp, transaction.ip, transaction.method, transaction.uri,
+                transaction.protocol, status, System.nanoTime() - transaction.started, transaction.bytes);
+    }
+
+    /**
+     * Write entries from the buffer until
+     * stopped, and then write what's left.
+     */
+    private void runWriter() {
+        while (running) {
+            try {
+                if (buffer.drain(this::write, batchSize) < batchSize) { // Caught up, wait for more
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis));
+                }
+            } catch (Exception ex) {
+                log.error("Failed to write access log entries", ex);
+            }
+        }
+        while (buffer.drain(this::write, batchSize) > 0); // Flush the remaining entries
+    }
+
+    /**
+     * Format and write the given entry.
+     *
+     * @param entry the entry to write
+     */
+    private void write(@NonNull AccessLogBuffer.Entry entry) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.getTimestamp())).append(" | ")
+                .append(entry.getIp()).append(" | ")
+                .append(entry.getMethod()).append(' ')
+                .append(entry.getUri()).append(' ')
+                .append(entry.getProtocol()).append(' ')
+                .append(entry.getStatus()).append(" | ")
+                .append(TimeUnit.NANOSECONDS.toMicros(entry.getLatencyNanos()) / 1000D).append("ms | ")
+                .append(entry.getBytes()).append('B');
+        log.info(line);
+    }
+
+    /**
+     * The details of a transaction, kept
+     * across its error dispatch (if any).
+     */
+    @RequiredArgsConstructor
+    private static final class Transaction {
+        /**
+         * The unix timestamp of when the request was received.
+         */
+        private final long timestamp;
+
+        /**
+         * The {@link System#nanoTime()} of when the request was received.
+         */
+        private final long started;
+
+        /**
+         * The real IP of the client.
+         */
+        @NonNull private final String ip;
+
+        /**
+         * The method of the request.
+         */
+        @NonNull private final String method;
+
+        /**
+         * The uri of the original request.
+         */
+        @NonNull private final String uri;
+
+        /**
+         * The protocol of the request.
+         */
+        @NonNull private final String protocol;
+
+        /**
+         * The number of bytes written, across every dispatch.
+         */
+        private long bytes;
+    }
+
+    /**
+     * A response that counts the bytes written to its body.
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        /**
+         * The transaction to count the bytes of.
+         */
+        @NonNull private final Transaction transaction;
+
+        /**
+         * Whether an error was sent, to be rendered in an error dispatch.
+         */
+        private boolean errorSent;
+
+        /**
+         * The counting output stream, created on first use.
+         */
+        private ServletOutputStream outputStream;
+
+        /**
+         * The counting writer, created on first use.
+         */
+        private PrintWriter writer;
+
+        private CountingResponse(@NonNull HttpServletResponse response, @NonNull Transaction transaction) {
+            super(response);
+            this.transaction = transaction;
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            errorSent = true;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            errorSent = true;
+            super.sendError(status, message);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        delegate.write(b);
+                        transaction.bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        delegate.write(b, off, len);
+                        transaction.bytes += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        delegate.setWriteListener(listener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        /**
+         * Flush anything buffered by the
+         * counting writer, if it was used.
+         */
+        private void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+}
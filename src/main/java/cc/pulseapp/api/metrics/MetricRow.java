@@ -0,0 +1,19 @@
+package cc.pulseapp.api.metrics;
+
+import io.questdb.client.Sender;
+import lombok.NonNull;
+
+/**
+ * A single row of metrics to be
+ * written to the time-series store.
+ *
+ * @author Braydon
+ */
+public interface MetricRow {
+    /**
+     * Write this row with the given sender.
+     *
+     * @param sender the sender to write with
+     */
+    void write(@NonNull Sender sender);
+}
@@ -0,0 +1,37 @@
+package cc.pulseapp.api.metrics;
+
+import cc.pulseapp.api.service.MetricsService;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the commands ran against Mongo.
+ *
+ * @author Braydon
+ */
+public final class MongoTimingListener implements CommandListener {
+    private static final String STORE = "mongo";
+
+    /**
+     * The service to record with.
+     */
+    @NonNull private final MetricsService metricsService;
+
+    public MongoTimingListener(@NonNull MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    public void commandSucceeded(@NonNull CommandSucceededEvent event) {
+        metricsService.recordDatastoreOperation(STORE, event.getCommandName(), true, event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+
+    @Override
+    public void commandFailed(@NonNull CommandFailedEvent event) {
+        metricsService.recordDatastoreOperation(STORE, event.getCommandName(), false, event.getElapsedTime(TimeUnit.MICROSECONDS));
+    }
+}
@@ -0,0 +1,98 @@
+package cc.pulseapp.api.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * Exports the metrics of the Redis connection pool(s).
+ * <p>
+ * Neither Redis client exposes its pool, so the metrics are
+ * read from the JMX beans commons-pool registers for every
+ * pool. Some clients use more than one pool (e.g. Lettuce
+ * pools pub/sub connections separately), so values are
+ * combined across every pool with the configured prefix.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Log4j2(topic = "Redis")
+public final class RedisPoolMetrics implements MeterBinder {
+    /**
+     * The server to read the pool beans from.
+     */
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    /**
+     * The name pattern matching the pool beans.
+     */
+    @NonNull private final ObjectName pattern;
+
+    public RedisPoolMetrics(@NonNull String jmxNamePrefix) {
+        try {
+            pattern = new ObjectName("org.apache.commons.pool2:type=GenericObjectPool,name=" + jmxNamePrefix + "*");
+        } catch (MalformedObjectNameException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        gauge(registry, "redis.pool.active", "Connections currently borrowed from the pool", "NumActive", Long::sum);
+        gauge(registry, "redis.pool.idle", "Connections currently idle in the pool", "NumIdle", Long::sum);
+        gauge(registry, "redis.pool.waiters", "Threads currently waiting for a connection", "NumWaiters", Long::sum);
+        gauge(registry, "redis.pool.max", "The max number of connections in the pool", "MaxTotal", Long::sum);
+        gauge(registry, "redis.pool.borrow.wait.mean", "Mean time (in millis) spent waiting for a connection", "MeanBorrowWaitTimeMillis", Math::max);
+        gauge(registry, "redis.pool.borrow.wait.max", "Max time (in millis) spent waiting for a connection", "MaxBorrowWaitTimeMillis", Math::max);
+        FunctionCounter.builder("redis.pool.borrowed", this, metrics -> metrics.read("BorrowedCount", Long::sum))
+                .description("Connections borrowed from the pool")
+                .register(registry);
+    }
+
+    /**
+     * Register a gauge reading a pool attribute.
+     *
+     * @param registry    the registry to register with
+     * @param name        the gauge name
+     * @param description the gauge description
+     * @param attribute   the pool attribute to read
+     * @param combiner    the function combining the values of each pool
+     */
+    private void gauge(@NonNull MeterRegistry registry, @NonNull String name, @NonNull String description,
+                       @NonNull String attribute, @NonNull BinaryOperator<Long> combiner) {
+        Gauge.builder(name, this, metrics -> metrics.read(attribute, combiner))
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * Read an attribute of every pool.
+     *
+     * @param attribute the attribute to read
+     * @param combiner  the function combining the values of each pool
+     * @return the combined value, 0 if there are no pools
+     */
+    private double read(@NonNull String attribute, @NonNull BinaryOperator<Long> combiner) {
+        Set<ObjectName> pools = server.queryNames(pattern, null);
+        Long combined = null;
+        for (ObjectName pool : pools) {
+            try {
+                long value = ((Number) server.getAttribute(pool, attribute)).longValue();
+                combined = combined == null ? value : combiner.apply(combined, value);
+            } catch (Exception ex) { // The pool was closed
+                log.debug("Failed to read {} of {}", attribute, pool, ex);
+            }
+        }
+        return combined == null ? 0D : combined;
+    }
+}
@@ -0,0 +1,93 @@
+package cc.pulseapp.api.metrics;
+
+import cc.pulseapp.api.service.MetricsService;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the commands ran on a {@link RedisConnection}.
+ * <p>
+ * Commands are reached either directly on the connection,
+ * or through one of its command groups (e.g. {@link RedisConnection#stringCommands()}),
+ * so the groups are proxied as well. Only methods declared
+ * by a {@code *Commands} interface are recorded.
+ * </p>
+ *
+ * @author Braydon
+ */
+@UtilityClass
+public final class RedisTimingProxy {
+    private static final String STORE = "redis";
+    private static final String COMMANDS_SUFFIX = "Commands";
+
+    /**
+     * Wrap the given connection so its commands are timed.
+     *
+     * @param connection     the connection to wrap
+     * @param metricsService the service to record with
+     * @return the wrapped connection
+     */
+    @NonNull
+    public static RedisConnection wrap(@NonNull RedisConnection connection, @NonNull MetricsService metricsService) {
+        return (RedisConnection) proxy(connection, metricsService);
+    }
+
+    /**
+     * Proxy the given target, timing its commands.
+     *
+     * @param target         the target to proxy
+     * @param metricsService the service to record with
+     * @return the proxy
+     */
+    @NonNull
+    private static Object proxy(@NonNull Object target, @NonNull MetricsService metricsService) {
+        Class<?>[] interfaces = ClassUtils.getAllInterfaces(target);
+        InvocationHandler handler = (proxy, method, args) -> {
+            Class<?> returnType = method.getReturnType();
+            if (returnType.isInterface() && returnType.getSimpleName().endsWith(COMMANDS_SUFFIX)) { // A command group
+                Object group = invoke(target, method, args);
+                return group == null ? null : proxy(group, metricsService);
+            }
+            if (!method.getDeclaringClass().getSimpleName().endsWith(COMMANDS_SUFFIX)) { // Not a command
+                return invoke(target, method, args);
+            }
+            long started = System.nanoTime();
+            boolean success = false;
+            try {
+                Object result = invoke(target, method, args);
+                success = true;
+                return result;
+            } finally {
+                metricsService.recordDatastoreOperation(STORE, method.getName(), success,
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+            }
+        };
+        return Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces, handler);
+    }
+
+    /**
+     * Invoke the given method on the target,
+     * unwrapping any exception it throws.
+     *
+     * @param target the target to invoke on
+     * @param method the method to invoke
+     * @param args   the arguments
+     * @return the result
+     * @throws Throwable the exception thrown by the method
+     */
+    private static Object invoke(@NonNull Object target, @NonNull Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cc.pulseapp.api.metrics;
+
+import cc.pulseapp.api.service.MetricsService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the metrics of every request.
+ * <p>
+ * Requests are grouped by the endpoint pattern that handled
+ * them (e.g. {@code /v1/auth/login}) rather than the raw uri,
+ * so path variables don't blow up the number of series.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Component @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnProperty(value = "questdb.enabled", havingValue = "true")
+public final class RequestMetricsFilter extends OncePerRequestFilter {
+    /**
+     * The request attribute holding the
+     * outcome of authenticating the request.
+     */
+    public static final String AUTH_OUTCOME_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".auth";
+
+    /**
+     * The endpoint of requests that weren't handled by a controller.
+     */
+    private static final String UNMATCHED_ENDPOINT = "unmatched";
+
+    /**
+     * The auth outcome of requests without an access token.
+     */
+    private static final String ANONYMOUS = "anonymous";
+
+    /**
+     * The service to record metrics with.
+     */
+    @NonNull private final MetricsService metricsService;
+
+    @Autowired
+    public RequestMetricsFilter(@NonNull MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain chain) throws ServletException, IOException {
+        long timestamp = System.currentTimeMillis();
+        long started = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object endpoint = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Object auth = request.getAttribute(AUTH_OUTCOME_ATTRIBUTE);
+            metricsService.recordRequest(timestamp, endpoint == null ? UNMATCHED_ENDPOINT : endpoint.toString(), request.getMethod(),
+                    auth == null ? ANONYMOUS : auth.toString(), response.getStatus(), TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        }
+    }
+}
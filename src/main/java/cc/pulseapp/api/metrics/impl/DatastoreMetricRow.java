@@ -0,0 +1,54 @@
+package cc.pulseapp.api.metrics.impl;
+
+import cc.pulseapp.api.metrics.MetricRow;
+import io.questdb.client.Sender;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A row of metrics for a single
+ * Mongo or Redis operation.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor
+public final class DatastoreMetricRow implements MetricRow {
+    private static final String TABLE = "datastore_operations";
+
+    /**
+     * The time (in millis) the operation completed.
+     */
+    private final long timestamp;
+
+    /**
+     * The store the operation ran against.
+     */
+    @NonNull private final String store;
+
+    /**
+     * The name of the operation.
+     */
+    @NonNull private final String operation;
+
+    /**
+     * Whether the operation succeeded.
+     */
+    private final boolean success;
+
+    /**
+     * The time (in micros) the operation took.
+     */
+    private final long latencyMicros;
+
+    @Override
+    public void write(@NonNull Sender sender) {
+        sender.table(TABLE)
+                .symbol("store", store)
+                .symbol("operation", operation)
+                .boolColumn("success", success)
+                .longColumn("latency_us", latencyMicros)
+                .at(timestamp, ChronoUnit.MILLIS);
+    }
+}
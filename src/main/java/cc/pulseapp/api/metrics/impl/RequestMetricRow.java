@@ -0,0 +1,59 @@
+package cc.pulseapp.api.metrics.impl;
+
+import cc.pulseapp.api.metrics.MetricRow;
+import io.questdb.client.Sender;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A row of metrics for a single HTTP request.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor
+public final class RequestMetricRow implements MetricRow {
+    private static final String TABLE = "http_requests";
+
+    /**
+     * The time (in millis) the request was received.
+     */
+    private final long timestamp;
+
+    /**
+     * The endpoint pattern that handled the request.
+     */
+    @NonNull private final String endpoint;
+
+    /**
+     * The request method.
+     */
+    @NonNull private final String method;
+
+    /**
+     * The outcome of authenticating the request.
+     */
+    @NonNull private final String auth;
+
+    /**
+     * The response status.
+     */
+    private final int status;
+
+    /**
+     * The time (in micros) taken to respond.
+     */
+    private final long latencyMicros;
+
+    @Override
+    public void write(@NonNull Sender sender) {
+        sender.table(TABLE)
+                .symbol("endpoint", endpoint)
+                .symbol("method", method)
+                .symbol("auth", auth)
+                .longColumn("status", status)
+                .longColumn("latency_us", latencyMicros)
+                .at(timestamp, ChronoUnit.MILLIS);
+    }
+}
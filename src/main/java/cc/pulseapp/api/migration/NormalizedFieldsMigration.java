@@ -0,0 +1,89 @@
+package cc.pulseapp.api.migration;
+
+import cc.pulseapp.api.common.StringUtils;
+import cc.pulseapp.api.model.page.StatusPage;
+import cc.pulseapp.api.model.user.User;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Backfills the normalized lookup fields ({@link User#getNormalizedEmail()}
+ * and {@link StatusPage#getNormalizedName()}) of documents created
+ * before they existed.
+ * <p>
+ * This runs during startup, before the web server accepts
+ * requests, so lookups by the normalized fields never miss
+ * an older document. Documents are processed in batches
+ * and only those missing the field are touched, so once
+ * everything is backfilled this is a single indexed query
+ * per collection.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Component @Log4j2(topic = "Migrations")
+public final class NormalizedFieldsMigration {
+    /**
+     * The number of documents to backfill per batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The template to run the migration with.
+     */
+    @NonNull private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public NormalizedFieldsMigration(@NonNull MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        backfill(User.class, "email", "normalizedEmail");
+        backfill(StatusPage.class, "name", "normalizedName");
+    }
+
+    /**
+     * Backfill the normalized field of every
+     * document in the given collection missing it.
+     *
+     * @param entityClass     the entity class of the collection
+     * @param sourceField     the field to normalize
+     * @param normalizedField the field to store the normalized value in
+     */
+    private void backfill(@NonNull Class<?> entityClass, @NonNull String sourceField, @NonNull String normalizedField) {
+        String collection = mongoTemplate.getCollectionName(entityClass);
+        long backfilled = 0L;
+        while (true) {
+            Query query = Query.query(Criteria.where(normalizedField).exists(false)).limit(BATCH_SIZE);
+            query.fields().include(sourceField);
+            List<Document> documents = mongoTemplate.find(query, Document.class, collection);
+            if (documents.isEmpty()) {
+                break;
+            }
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection);
+            for (Document document : documents) {
+                String value = document.getString(sourceField);
+                operations.updateOne(Query.query(Criteria.where("_id").is(document.get("_id"))),
+                        Update.update(normalizedField, value == null ? "" : StringUtils.normalize(value)));
+            }
+            operations.execute();
+            backfilled += documents.size();
+        }
+        if (backfilled > 0L) {
+            log.info("Backfilled {} of {} document(s) in '{}'", normalizedField, backfilled, collection);
+        }
+    }
+}
@@ -2,10 +2,16 @@ package cc.pulseapp.api.model;
 
 import lombok.*;
 
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A feature flag.
+ * <p>
+ * The state of every feature lives in the current
+ * {@link FeatureFlags} snapshot, so checking a
+ * feature is a single volatile read.
+ * </p>
  *
  * @author Braydon
  */
@@ -17,21 +23,40 @@ public enum Feature {
 
     public static final Feature[] VALUES = values();
 
+    /**
+     * The features by their id.
+     */
+    private static final Map<String, Feature> BY_ID = new HashMap<>();
+    static {
+        for (Feature feature : VALUES) {
+            BY_ID.put(feature.getId(), feature);
+        }
+    }
+
     /**
      * The name of this feature.
      */
     @NonNull private final String id;
 
     /**
-     * Whether this feature is enabled.
+     * Check if this feature is enabled
+     * in the current environment.
+     *
+     * @return whether this feature is enabled
      */
-    @Setter private boolean enabled;
+    public boolean isEnabled() {
+        return FeatureFlags.current().isEnabled(this);
+    }
 
     /**
-     * The value of this feature, if any.
+     * Get the value of this feature
+     * in the current environment.
+     *
+     * @return the value, null if none
      */
-    @Setter private Object value;
-
+    public Object getValue() {
+        return FeatureFlags.current().getValue(this);
+    }
 
     /**
      * Get a feature by its id.
@@ -40,25 +65,6 @@ public enum Feature {
      * @return the feature, null if none
      */
     public static Feature getById(@NonNull String id) {
-        for (Feature feature : VALUES) {
-            if (feature.getId().equals(id)) {
-                return feature;
-            }
-        }
-        return null;
-    }
-
-    /**
-     * Get the combined hash
-     * code of all features.
-     *
-     * @return the combined hash code
-     */
-    public static int hash() {
-        int hash = 0;
-        for (Feature feature : VALUES) {
-            hash += Objects.hash(feature.isEnabled(), feature.getValue());
-        }
-        return hash;
+        return BY_ID.get(id);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package cc.pulseapp.api.model;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable snapshot of the state
+ * of every {@link Feature}.
+ * <p>
+ * Snapshots are never mutated, a changed set of
+ * flags is published as a new snapshot, so readers
+ * never see a half-applied update.
+ * </p>
+ *
+ * @author Braydon
+ */
+public final class FeatureFlags {
+    /**
+     * A snapshot with every feature disabled.
+     */
+    public static final FeatureFlags NONE = new FeatureFlags(new boolean[Feature.VALUES.length], new Object[Feature.VALUES.length]);
+
+    /**
+     * A snapshot with every feature enabled.
+     */
+    public static final FeatureFlags ALL = allEnabled();
+
+    /**
+     * The current environment snapshot.
+     */
+    private static volatile FeatureFlags current = NONE;
+
+    /**
+     * Whether each feature is enabled, by ordinal.
+     */
+    @NonNull private final boolean[] enabled;
+
+    /**
+     * The value of each feature, by ordinal.
+     */
+    @NonNull private final Object[] values;
+
+    /**
+     * Create a snapshot, copying the given state.
+     *
+     * @param enabled whether each feature is enabled, by ordinal
+     * @param values  the value of each feature, by ordinal
+     */
+    public FeatureFlags(@NonNull boolean[] enabled, @NonNull Object[] values) {
+        if (enabled.length != Feature.VALUES.length || values.length != Feature.VALUES.length) {
+            throw new IllegalArgumentException("Expected the state of " + Feature.VALUES.length + " features");
+        }
+        this.enabled = enabled.clone();
+        this.values = values.clone();
+    }
+
+    /**
+     * Check if the given feature is enabled.
+     *
+     * @param feature the feature
+     * @return whether the feature is enabled
+     */
+    public boolean isEnabled(@NonNull Feature feature) {
+        return enabled[feature.ordinal()];
+    }
+
+    /**
+     * Get the value of the given feature.
+     *
+     * @param feature the feature
+     * @return the value, null if none
+     */
+    public Object getValue(@NonNull Feature feature) {
+        return values[feature.ordinal()];
+    }
+
+    /**
+     * Get the current environment snapshot.
+     *
+     * @return the snapshot
+     */
+    @NonNull
+    public static FeatureFlags current() {
+        return current;
+    }
+
+    /**
+     * Publish a new environment snapshot.
+     *
+     * @param flags the snapshot to publish
+     * @return whether the snapshot differs from the previous one
+     */
+    public static boolean publish(@NonNull FeatureFlags flags) {
+        FeatureFlags previous = current;
+        current = flags;
+        return !previous.equals(flags);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return this == other || (other instanceof FeatureFlags flags
+                && Arrays.equals(enabled, flags.enabled) && Arrays.equals(values, flags.values));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(enabled) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("FeatureFlags(");
+        for (Feature feature : Feature.VALUES) {
+            if (feature.ordinal() > 0) {
+                builder.append(", ");
+            }
+            builder.append(feature.getId()).append('=').append(isEnabled(feature));
+            if (getValue(feature) != null) {
+                builder.append(':').append(getValue(feature));
+            }
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Create a snapshot with every feature enabled.
+     *
+     * @return the snapshot
+     */
+    @NonNull
+    private static FeatureFlags allEnabled() {
+        boolean[] enabled = new boolean[Feature.VALUES.length];
+        Arrays.fill(enabled, true);
+        return new FeatureFlags(enabled, new Object[Feature.VALUES.length]);
+    }
+}
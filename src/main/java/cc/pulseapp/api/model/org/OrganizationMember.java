@@ -4,6 +4,7 @@ import cc.pulseapp.api.model.user.User;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
+import org.springframework.data.mongodb.core.index.Indexed;
 
 /**
  * A member of an {@link Organization}.
@@ -16,7 +17,7 @@ public final class OrganizationMember {
      * The snowflake of the {@link User}
      * this member belongs to.
      */
-    private final long userSnowflake;
+    @Indexed private final long userSnowflake;
 
     /**
      * The bitwise permissions of this member.
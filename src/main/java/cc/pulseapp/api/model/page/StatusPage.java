@@ -1,6 +1,7 @@
 package cc.pulseapp.api.model.page;
 
 import cc.pulseapp.api.model.org.Organization;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
@@ -25,6 +26,14 @@ public final class StatusPage {
      */
     @Indexed @NonNull private final String name;
 
+    /**
+     * The name of this status page normalized for
+     * lookups, null until backfilled for older pages.
+     *
+     * @see cc.pulseapp.api.common.StringUtils#normalize(String)
+     */
+    @Indexed @JsonIgnore private final String normalizedName;
+
     /**
      * The slug of this status page.
      */
@@ -59,5 +68,5 @@ public final class StatusPage {
      * The snowflake of the {@link Organization}
      * that owns this status page.
      */
-    private final long orgSnowflake;
+    @Indexed private final long orgSnowflake;
 }
\ No newline at end of file
@@ -21,12 +21,17 @@ public final class TFAProfile {
     @NonNull private final String secret;
 
     /**
-     * The sale for the user's backup codes.
+     * The sale for the user's backup
+     * codes, only present for legacy profiles.
      */
-    @NonNull private final String backupCodesSalt;
+    private final String backupCodesSalt;
 
     /**
      * The (encrypted) backup codes of the user.
+     * <p>
+     * These are encoded {@code PasswordHash}'s sharing
+     * the same salt, or bare digests for legacy profiles.
+     * </p>
      */
     @NonNull private final List<String> backupCodes;
 }
\ No newline at end of file
@@ -5,6 +5,7 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.regex.Pattern;
 
@@ -28,6 +29,14 @@ public final class User {
      */
     @Indexed @NonNull private final String email;
 
+    /**
+     * This user's email normalized for lookups,
+     * null until backfilled for older accounts.
+     *
+     * @see cc.pulseapp.api.common.StringUtils#normalize(String)
+     */
+    @Indexed private final String normalizedEmail;
+
     /**
      * This user's username.
      */
@@ -35,13 +44,18 @@ public final class User {
 
     /**
      * The (encrypted) password for this user.
+     * <p>
+     * This is an encoded {@code PasswordHash}, or
+     * a bare digest for legacy accounts.
+     * </p>
      */
-    @NonNull private final String password;
+    @NonNull private String password;
 
     /**
-     * The salt for this user's password.
+     * The salt for this user's password,
+     * only present for legacy accounts.
      */
-    @NonNull private final String passwordSalt;
+    private String passwordSalt;
 
     /**
      * The hash to the avatar of this user, if any.
@@ -69,6 +83,11 @@ public final class User {
      */
     @NonNull private Date lastLogin;
 
+    /**
+     * The version of this user, bumped every time it is saved.
+     */
+    private long version;
+
     /**
      * Add a flag to this user.
      *
@@ -87,6 +106,17 @@ public final class User {
         flags &= ~flag.bitwise();
     }
 
+    /**
+     * Create a deep copy of this user.
+     *
+     * @return the copied user
+     */
+    @NonNull
+    public User copy() {
+        TFAProfile tfaCopy = tfa == null ? null : new TFAProfile(tfa.getSecret(), tfa.getBackupCodesSalt(), new ArrayList<>(tfa.getBackupCodes()));
+        return new User(snowflake, email, normalizedEmail, username, password, passwordSalt, avatar, tier, tfaCopy, flags, new Date(lastLogin.getTime()), version);
+    }
+
     /**
      * Check if this user has a given flag.
      *
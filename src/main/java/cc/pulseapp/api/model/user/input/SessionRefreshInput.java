@@ -0,0 +1,27 @@
+package cc.pulseapp.api.model.user.input;
+
+import cc.pulseapp.api.model.user.session.Session;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The input to refresh a {@link Session}.
+ *
+ * @author Braydon
+ */
+@AllArgsConstructor @Getter
+public final class SessionRefreshInput {
+    /**
+     * The refresh token of the session.
+     */
+    private final String refreshToken;
+
+    /**
+     * Check if this input is valid.
+     *
+     * @return whether this input is valid
+     */
+    public boolean isValid() {
+        return refreshToken != null && (!refreshToken.isBlank());
+    }
+}
@@ -0,0 +1,44 @@
+package cc.pulseapp.api.model.user.session;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * A verified access token, the
+ * credentials of an authenticated request.
+ *
+ * @author Braydon
+ * @see cc.pulseapp.api.service.AccessTokenService for issuing and verifying
+ */
+@AllArgsConstructor @Getter @EqualsAndHashCode @ToString
+public final class AccessToken {
+    /**
+     * The snowflake of the session this token was issued for.
+     */
+    private final long sessionSnowflake;
+
+    /**
+     * The snowflake of the user this token was issued for.
+     */
+    private final long userSnowflake;
+
+    /**
+     * The unix timestamp of when this token expires.
+     */
+    private final long expires;
+
+    /**
+     * Get the access token of a session
+     * resolved by its long-lived access token.
+     *
+     * @param session the session
+     * @return the access token
+     */
+    @NonNull
+    public static AccessToken fromSession(@NonNull Session session) {
+        return new AccessToken(session.getSnowflake(), session.getUserSnowflake(), session.getExpires());
+    }
+}
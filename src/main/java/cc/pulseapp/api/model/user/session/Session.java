@@ -1,42 +1,77 @@
 package cc.pulseapp.api.model.user.session;
 
+import cc.pulseapp.api.common.HashUtils;
 import cc.pulseapp.api.model.user.User;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
-import org.springframework.data.annotation.Id;
-import org.springframework.data.redis.core.RedisHash;
-import org.springframework.data.redis.core.index.Indexed;
+
+import java.security.MessageDigest;
 
 /**
  * A session for a {@link User}.
+ * <p>
+ * Only the digests of the tokens are stored, the
+ * tokens themselves are only known when they are
+ * issued and are handed to the user once.
+ * </p>
  *
  * @author Braydon
+ * @see cc.pulseapp.api.repository.SessionRepository for storage
+ * @see cc.pulseapp.api.common.TokenUtils for the refresh token format
+ * @see cc.pulseapp.api.service.AccessTokenService for access tokens
  */
-@AllArgsConstructor @Getter @EqualsAndHashCode(onlyExplicitlyIncluded = true)
-@RedisHash(value = "sessions", timeToLive = 30 * 24 * 60 * 60) // Expire in 30 days (days, hours, mins, secs)
+@AllArgsConstructor(access = AccessLevel.PRIVATE) @Getter @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public final class Session {
     /**
      * The snowflake of this session.
      */
-    @EqualsAndHashCode.Include @Id private final long snowflake;
+    @EqualsAndHashCode.Include private final long snowflake;
 
     /**
      * The snowflake of the user this session is for.
      */
-    @Indexed @JsonIgnore private final long userSnowflake;
+    @JsonIgnore private final long userSnowflake;
 
     /**
-     * The access token for the user.
+     * The access token for the user, only
+     * present when it was just issued.
      */
-    @Indexed @NonNull private final String accessToken;
+    private final String accessToken;
 
     /**
-     * The refresh token for the user.
+     * The unix timestamp of when the access
+     * token expires, only present when it was
+     * just issued.
      */
-    @Indexed @NonNull private final String refreshToken;
+    private final Long accessTokenExpires;
+
+    /**
+     * The refresh token for the user, only
+     * present when it was just issued.
+     */
+    private final String refreshToken;
+
+    /**
+     * The digest of the long-lived access token, only
+     * present on sessions created before access tokens
+     * were signed and not yet refreshed.
+     */
+    @JsonIgnore private final byte[] accessTokenDigest;
+
+    /**
+     * The digest of the refresh token.
+     */
+    @NonNull @JsonIgnore private final byte[] refreshTokenDigest;
+
+    /**
+     * The digest of the refresh token this session
+     * was last rotated from, null if never rotated.
+     */
+    @JsonIgnore private final byte[] retiredRefreshTokenDigest;
 
     /**
      * The location this session originated from.
@@ -44,7 +79,97 @@ public final class Session {
     @NonNull @JsonIgnore private final SessionLocation location;
 
     /**
-     * The unix timestamp of when this token expires.
+     * The unix timestamp of when this session expires.
      */
     private final long expires;
-}
\ No newline at end of file
+
+    /**
+     * Create a new session with the given refresh token.
+     *
+     * @param snowflake     the snowflake of the session
+     * @param userSnowflake the snowflake of the user
+     * @param refreshToken  the refresh token
+     * @param location      the location the session originated from
+     * @param expires       the unix timestamp of when the session expires
+     */
+    public Session(long snowflake, long userSnowflake, @NonNull String refreshToken, @NonNull SessionLocation location, long expires) {
+        this(snowflake, userSnowflake, null, null, refreshToken, null, HashUtils.rawDigest(refreshToken), null, location, expires);
+    }
+
+    /**
+     * Restore a stored session from its token digests.
+     *
+     * @param snowflake                 the snowflake of the session
+     * @param userSnowflake             the snowflake of the user
+     * @param accessTokenDigest         the digest of the long-lived access token, null if none
+     * @param refreshTokenDigest        the digest of the refresh token
+     * @param retiredRefreshTokenDigest the digest of the last rotated refresh token, null if none
+     * @param location                  the location the session originated from
+     * @param expires                   the unix timestamp of when the session expires
+     */
+    public Session(long snowflake, long userSnowflake, byte[] accessTokenDigest, @NonNull byte[] refreshTokenDigest,
+                   byte[] retiredRefreshTokenDigest, @NonNull SessionLocation location, long expires) {
+        this(snowflake, userSnowflake, null, null, null, accessTokenDigest, refreshTokenDigest, retiredRefreshTokenDigest, location, expires);
+    }
+
+    /**
+     * Rotate the refresh token of this session.
+     * <p>
+     * The long-lived access token (if any)
+     * is retired along with the old refresh token, the
+     * digest of which is kept to detect its reuse.
+     * </p>
+     *
+     * @param refreshToken the new refresh token
+     * @return the rotated session
+     */
+    @NonNull
+    public Session rotate(@NonNull String refreshToken) {
+        return new Session(snowflake, userSnowflake, null, null, refreshToken, null,
+                HashUtils.rawDigest(refreshToken), refreshTokenDigest, location, expires);
+    }
+
+    /**
+     * Attach a newly issued access token to this session.
+     *
+     * @param accessToken        the access token
+     * @param accessTokenExpires the unix timestamp of when the access token expires
+     * @return the session with the access token
+     */
+    @NonNull
+    public Session withAccessToken(@NonNull String accessToken, long accessTokenExpires) {
+        return new Session(snowflake, userSnowflake, accessToken, accessTokenExpires, refreshToken,
+                accessTokenDigest, refreshTokenDigest, retiredRefreshTokenDigest, location, expires);
+    }
+
+    /**
+     * Check if the given long-lived access token belongs to this session.
+     *
+     * @param accessToken the access token to check
+     * @return whether the access token matches
+     */
+    public boolean matchesAccessToken(@NonNull String accessToken) {
+        return accessTokenDigest != null && MessageDigest.isEqual(accessTokenDigest, HashUtils.rawDigest(accessToken));
+    }
+
+    /**
+     * Check if the given refresh token belongs to this session.
+     *
+     * @param refreshToken the refresh token to check
+     * @return whether the refresh token matches
+     */
+    public boolean matchesRefreshToken(@NonNull String refreshToken) {
+        return MessageDigest.isEqual(refreshTokenDigest, HashUtils.rawDigest(refreshToken));
+    }
+
+    /**
+     * Check if the given refresh token is the one
+     * this session was last rotated from.
+     *
+     * @param refreshToken the refresh token to check
+     * @return whether the refresh token was retired by this session
+     */
+    public boolean matchesRetiredRefreshToken(@NonNull String refreshToken) {
+        return retiredRefreshTokenDigest != null && MessageDigest.isEqual(retiredRefreshTokenDigest, HashUtils.rawDigest(refreshToken));
+    }
+}
@@ -1,6 +1,8 @@
 package cc.pulseapp.api.model.user.session;
 
 import cc.pulseapp.api.common.RequestUtils;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.DeviceType;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.*;
 
@@ -9,7 +11,7 @@ import lombok.*;
  *
  * @author Braydon
  */
-@AllArgsConstructor(access = AccessLevel.PRIVATE) @Getter @ToString
+@AllArgsConstructor @Getter @ToString
 public final class SessionLocation {
     /**
      * The IP address that created the session.
@@ -36,22 +38,39 @@ public final class SessionLocation {
 
     /**
      * The user agent of the person
-     * that created the session.
+     * that created the session, if any.
      */
-    @NonNull private final String userAgent;
+    private final String userAgent;
+
+    /**
+     * The type of device the user agent belongs to, null if
+     * the session predates classification or was created
+     * before the analyzer was built.
+     */
+    private final DeviceType deviceType;
+
+    /**
+     * The type of browser the user agent belongs to, null if
+     * the session predates classification or was created
+     * before the analyzer was built.
+     */
+    private final BrowserType browserType;
 
     /**
      * Build a location from the given request.
      *
-     * @param request the request to build from
+     * @param request     the request to build from
+     * @param deviceType  the classified device type of the user agent, null if not classified
+     * @param browserType the classified browser type of the user agent, null if not classified
      * @return the session location
      */
     @NonNull
-    public static SessionLocation buildFromRequest(@NonNull HttpServletRequest request) {
+    public static SessionLocation buildFromRequest(@NonNull HttpServletRequest request, DeviceType deviceType,
+                                                   BrowserType browserType) {
         return new SessionLocation(
                 RequestUtils.getRealIp(request), request.getHeader("CF-IPCountry"),
                 request.getHeader("CF-Region"), request.getHeader("CF-IPCity"),
-                RequestUtils.getUserAgent(request)
+                RequestUtils.getUserAgent(request), deviceType, browserType
         );
     }
 }
\ No newline at end of file
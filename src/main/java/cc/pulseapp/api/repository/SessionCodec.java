@@ -0,0 +1,207 @@
+package cc.pulseapp.api.repository;
+
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.DeviceType;
+import cc.pulseapp.api.model.user.session.Session;
+import cc.pulseapp.api.model.user.session.SessionLocation;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+import org.apache.commons.lang3.EnumUtils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodes {@link Session}'s to and from
+ * a compact binary format for storage.
+ * <p>
+ * The format is a version byte, the fixed-width
+ * numbers of the session, the token digests, each
+ * string as a var-int length (0 for null, otherwise
+ * length + 1) followed by its UTF-8 bytes, and then
+ * the digest of the retired refresh token (zeros if
+ * the session was never rotated).
+ * </p>
+ * <p>
+ * A session without a long-lived access token has its
+ * access token digest stored as zeros, so the refresh
+ * token digest is always at {@link #REFRESH_DIGEST_OFFSET}.
+ * </p>
+ * <p>
+ * Older versions can still be decoded, version 1 stored
+ * the tokens themselves as strings instead of their digests,
+ * version 2 had no user agent classification, and version 3
+ * had no digest of the retired refresh token.
+ * </p>
+ *
+ * @author Braydon
+ */
+@UtilityClass
+public final class SessionCodec {
+    private static final byte LEGACY_VERSION = 1;
+    private static final byte UNCLASSIFIED_VERSION = 2;
+    private static final byte UNRETIRED_VERSION = 3;
+    private static final byte VERSION = 4;
+    private static final int DIGEST_LENGTH = 32;
+    private static final byte[] NO_DIGEST = new byte[DIGEST_LENGTH];
+
+    /**
+     * The offset of the refresh token digest in an encoded session.
+     */
+    static final int REFRESH_DIGEST_OFFSET = 1 + Long.BYTES * 3 + DIGEST_LENGTH;
+
+    /**
+     * The length of a token digest.
+     */
+    static final int REFRESH_DIGEST_LENGTH = DIGEST_LENGTH;
+
+    /**
+     * Encode the given session.
+     *
+     * @param session the session to encode
+     * @return the encoded session
+     */
+    public static byte[] encode(@NonNull Session session) {
+        SessionLocation location = session.getLocation();
+        byte[][] strings = {
+                utf8(location.getIp()), utf8(location.getCountry()), utf8(location.getRegion()),
+                utf8(location.getCity()), utf8(location.getUserAgent()),
+                utf8(location.getDeviceType() == null ? null : location.getDeviceType().name()),
+                utf8(location.getBrowserType() == null ? null : location.getBrowserType().name())
+        };
+        int size = 1 + Long.BYTES * 3 + DIGEST_LENGTH * 3;
+        for (byte[] string : strings) {
+            size += 5 + (string == null ? 0 : string.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.putLong(session.getSnowflake());
+        buffer.putLong(session.getUserSnowflake());
+        buffer.putLong(session.getExpires());
+        buffer.put(session.getAccessTokenDigest() == null ? NO_DIGEST : session.getAccessTokenDigest());
+        buffer.put(session.getRefreshTokenDigest());
+        for (byte[] string : strings) {
+            putString(buffer, string);
+        }
+        buffer.put(session.getRetiredRefreshTokenDigest() == null ? NO_DIGEST : session.getRetiredRefreshTokenDigest());
+        byte[] encoded = new byte[buffer.position()];
+        buffer.flip().get(encoded);
+        return encoded;
+    }
+
+    /**
+     * Decode the given session.
+     *
+     * @param encoded the encoded session
+     * @return the decoded session
+     * @throws IllegalArgumentException if the session is malformed
+     */
+    @NonNull
+    public static Session decode(@NonNull byte[] encoded) throws IllegalArgumentException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            byte version = buffer.get();
+            if (version != VERSION && version != UNRETIRED_VERSION && version != UNCLASSIFIED_VERSION && version != LEGACY_VERSION) {
+                throw new IllegalArgumentException("Unknown session version: " + version);
+            }
+            long snowflake = buffer.getLong();
+            long userSnowflake = buffer.getLong();
+            long expires = buffer.getLong();
+            byte[] accessTokenDigest;
+            byte[] refreshTokenDigest;
+            if (version == LEGACY_VERSION) { // Tokens were stored as is
+                accessTokenDigest = HashUtils.rawDigest(getString(buffer));
+                refreshTokenDigest = HashUtils.rawDigest(getString(buffer));
+            } else {
+                accessTokenDigest = new byte[DIGEST_LENGTH];
+                refreshTokenDigest = new byte[DIGEST_LENGTH];
+                buffer.get(accessTokenDigest).get(refreshTokenDigest);
+                if (Arrays.equals(accessTokenDigest, NO_DIGEST)) { // No long-lived access token
+                    accessTokenDigest = null;
+                }
+            }
+            String ip = getString(buffer);
+            String country = getString(buffer);
+            String region = getString(buffer);
+            String city = getString(buffer);
+            String userAgent = getString(buffer);
+            DeviceType deviceType = null;
+            BrowserType browserType = null;
+            if (version >= UNRETIRED_VERSION) {
+                String deviceTypeName = getString(buffer);
+                String browserTypeName = getString(buffer);
+                deviceType = deviceTypeName == null ? null : EnumUtils.getEnum(DeviceType.class, deviceTypeName);
+                browserType = browserTypeName == null ? null : EnumUtils.getEnum(BrowserType.class, browserTypeName);
+            }
+            byte[] retiredRefreshTokenDigest = null;
+            if (version == VERSION) {
+                retiredRefreshTokenDigest = new byte[DIGEST_LENGTH];
+                buffer.get(retiredRefreshTokenDigest);
+                if (Arrays.equals(retiredRefreshTokenDigest, NO_DIGEST)) { // Never rotated
+                    retiredRefreshTokenDigest = null;
+                }
+            }
+            SessionLocation location = new SessionLocation(ip, country, region, city, userAgent, deviceType, browserType);
+            return new Session(snowflake, userSnowflake, accessTokenDigest, refreshTokenDigest, retiredRefreshTokenDigest, location, expires);
+        } catch (BufferUnderflowException | NegativeArraySizeException | NullPointerException ex) {
+            throw new IllegalArgumentException("Malformed session", ex);
+        }
+    }
+
+    /**
+     * Put a string into the buffer.
+     *
+     * @param buffer the buffer to put into
+     * @param string the UTF-8 bytes of the string, null if none
+     */
+    private static void putString(@NonNull ByteBuffer buffer, byte[] string) {
+        int length = string == null ? 0 : string.length + 1;
+        while ((length & ~0x7F) != 0) { // Var-int
+            buffer.put((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        buffer.put((byte) length);
+        if (string != null) {
+            buffer.put(string);
+        }
+    }
+
+    /**
+     * Get a string from the buffer.
+     *
+     * @param buffer the buffer to get from
+     * @return the string, null if none
+     */
+    private static String getString(@NonNull ByteBuffer buffer) {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (shift > 28) {
+                throw new IllegalArgumentException("Malformed string length");
+            }
+            byte part = buffer.get();
+            length |= (part & 0x7F) << shift;
+            if ((part & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the UTF-8 bytes of the given string.
+     *
+     * @param string the string
+     * @return the bytes, null if the string is null
+     */
+    private static byte[] utf8(String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,26 +1,168 @@
 package cc.pulseapp.api.repository;
 
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.common.TokenUtils;
 import cc.pulseapp.api.model.user.session.Session;
+import cc.pulseapp.api.model.user.session.SessionLocation;
 import lombok.NonNull;
-import org.springframework.data.repository.CrudRepository;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Repository;
 
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * The repository for {@link Session}'s.
+ * <p>
+ * Each session is a single key, named by the snowflake
+ * of the session and holding the session (with only the
+ * digests of its tokens) in the compact binary format of
+ * {@link SessionCodec}. Tokens carry the session snowflake
+ * (see {@link TokenUtils}), so resolving a token is a single
+ * {@code GET} followed by comparing digests. Every user has
+ * a set of their session snowflakes, writes and deletes
+ * maintain both in a single pipelined round trip.
+ * </p>
+ * <p>
+ * Sessions stored in an older format (keyed by the token
+ * digest, or Spring Data {@code @RedisHash}) are still found,
+ * and are migrated on first use. Their tokens carry no
+ * snowflake, so a pointer from the access token digest to
+ * the session is kept until the session expires.
+ * </p>
  *
  * @author Braydon
  */
-@Repository
-public interface SessionRepository extends CrudRepository<Session, String> {
+@Repository @Log4j2(topic = "Sessions")
+public class SessionRepository {
+    private static final byte[] SESSION_KEY_PREFIX = bytes("sessions:id:");
+    private static final String USER_KEY_PREFIX = "sessions:by-user:";
+    private static final byte[] LEGACY_TOKEN_KEY_PREFIX = bytes("sessions:legacy-token:");
+
+    /**
+     * Replace a session, if its refresh token digest is still the given one.
+     * <p>
+     * Returns 1 if replaced, 0 if the digest didn't match,
+     * and -1 if the session doesn't exist.
+     * </p>
+     */
+    private static final byte[] ROTATE_SCRIPT = bytes("""
+            local current = redis.call('get', KEYS[1])
+            if not current then
+                return -1
+            end
+            if string.sub(current, %d, %d) ~= ARGV[1] then
+                return 0
+            end
+            redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3])
+            return 1
+            """.formatted(SessionCodec.REFRESH_DIGEST_OFFSET + 1, SessionCodec.REFRESH_DIGEST_OFFSET + SessionCodec.REFRESH_DIGEST_LENGTH));
+
+    /**
+     * Add a session to the set of its user, only ever
+     * extending the ttl of the set to the given one.
+     */
+    private static final byte[] INDEX_SCRIPT = bytes("""
+            redis.call('sadd', KEYS[1], ARGV[1])
+            if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then
+                redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 0
+            """);
+
+    // Sessions keyed by the digest of their access token
+    private static final byte[] DIGEST_SESSION_KEY_PREFIX = bytes("sessions:token:");
+    private static final byte[] DIGEST_REFRESH_KEY_PREFIX = bytes("sessions:refresh:");
+    private static final String DIGEST_USER_KEY_PREFIX = "sessions:user:";
+
+    // Sessions stored by Spring Data
+    private static final String LEGACY_KEYSPACE = "sessions";
+    private static final String LEGACY_LOCATION_PREFIX = "location.";
+
+    /**
+     * The template to store sessions with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    @Autowired
+    public SessionRepository(@NonNull StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Save the given session.
+     *
+     * @param session the session to save
+     * @return the saved session
+     */
+    @NonNull
+    public Session save(@NonNull Session session) {
+        long ttl = session.getExpires() - System.currentTimeMillis();
+        if (ttl <= 0L) { // Already expired, nothing to store
+            return session;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            write(connection, session, ttl);
+            return null;
+        });
+        return session;
+    }
+
+    /**
+     * Rotate the refresh token of the given session, as long as
+     * no one else rotated it since it was read.
+     *
+     * @param current the session as it was read
+     * @param rotated the rotated session
+     * @return whether the session was rotated
+     */
+    public boolean rotate(@NonNull Session current, @NonNull Session rotated) {
+        long ttl = rotated.getExpires() - System.currentTimeMillis();
+        if (ttl <= 0L) {
+            return false;
+        }
+        Long result = redisTemplate.execute((RedisCallback<Long>) connection -> connection.scriptingCommands().eval(
+                ROTATE_SCRIPT, ReturnType.INTEGER, 1, sessionKey(current.getSnowflake()),
+                current.getRefreshTokenDigest(), SessionCodec.encode(rotated), bytes(Long.toString(ttl))));
+        return result != null && result == 1L;
+    }
+
     /**
      * Find a session by the access token.
      *
      * @param accessToken the access token to search by
      * @return the session, null if none
      */
-    Session findByAccessToken(@NonNull String accessToken);
+    public Session findByAccessToken(@NonNull String accessToken) {
+        long snowflake = TokenUtils.getSessionSnowflake(accessToken);
+        if (snowflake == -1L) { // Issued before tokens carried the session
+            return findByLegacyAccessToken(accessToken);
+        }
+        Session session = findBySnowflake(snowflake);
+        return session != null && session.matchesAccessToken(accessToken) ? session : null;
+    }
+
+    /**
+     * Find a session by its snowflake.
+     *
+     * @param snowflake the snowflake of the session
+     * @return the session, null if none
+     */
+    public Session findBySnowflake(long snowflake) {
+        byte[] encoded = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(sessionKey(snowflake)));
+        return encoded == null ? null : decode(encoded);
+    }
 
     /**
      * Get all sessions for a user.
@@ -28,5 +170,280 @@ public interface SessionRepository extends CrudRepository<Session, String> {
      * @param userSnowflake the user's snowflake
      * @return the sessions
      */
-    List<Session> findAllByUserSnowflake(long userSnowflake);
-}
\ No newline at end of file
+    @NonNull
+    public List<Session> findAllByUserSnowflake(long userSnowflake) {
+        byte[] userKey = bytes(USER_KEY_PREFIX + userSnowflake);
+        byte[] digestUserKey = bytes(DIGEST_USER_KEY_PREFIX + userSnowflake);
+        List<Object> indexes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.setCommands().sMembers(userKey);
+            connection.setCommands().sMembers(digestUserKey);
+            connection.setCommands().sMembers(bytes(LEGACY_KEYSPACE + ":userSnowflake:" + userSnowflake));
+            return null;
+        }, RedisSerializer.byteArray());
+
+        List<Session> sessions = new ArrayList<>();
+        List<byte[]> snowflakes = new ArrayList<>(members(indexes.get(0)));
+        List<Object> results = getAll(SESSION_KEY_PREFIX, snowflakes);
+        List<byte[]> expired = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            Session session = results.get(i) instanceof byte[] encoded ? decode(encoded) : null;
+            if (session == null) {
+                expired.add(snowflakes.get(i));
+                continue;
+            }
+            sessions.add(session);
+        }
+        if (!expired.isEmpty()) { // Clean up the sessions that expired
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.setCommands().sRem(userKey, expired.toArray(byte[][]::new)));
+        }
+
+        // Migrate any sessions still in an older format
+        List<byte[]> digests = new ArrayList<>(members(indexes.get(1)));
+        List<Object> digestResults = getAll(DIGEST_SESSION_KEY_PREFIX, digests);
+        for (int i = 0; i < digestResults.size(); i++) {
+            Session session = digestResults.get(i) instanceof byte[] encoded ? decode(encoded) : null;
+            Session migrated = session == null ? null : migrate(session, connection -> deleteDigestKeyed(connection, session));
+            if (migrated != null) {
+                sessions.add(migrated);
+            }
+        }
+        if (!digests.isEmpty()) {
+            redisTemplate.delete(DIGEST_USER_KEY_PREFIX + userSnowflake);
+        }
+        for (byte[] legacyId : members(indexes.get(2))) {
+            Session session = migrateLegacy(new String(legacyId, StandardCharsets.UTF_8));
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Delete the given sessions.
+     *
+     * @param sessions the sessions to delete
+     */
+    public void deleteAll(@NonNull Collection<Session> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Session session : sessions) {
+                byte[] snowflake = bytes(Long.toString(session.getSnowflake()));
+                connection.keyCommands().del(sessionKey(session.getSnowflake()));
+                if (session.getAccessTokenDigest() != null) {
+                    connection.keyCommands().del(key(LEGACY_TOKEN_KEY_PREFIX, session.getAccessTokenDigest()));
+                }
+                connection.setCommands().sRem(bytes(USER_KEY_PREFIX + session.getUserSnowflake()), snowflake);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Write the given session and index it for its user.
+     *
+     * @param connection the connection to write with
+     * @param session    the session to write
+     * @param ttl        the time (in millis) until the session expires
+     */
+    private void write(@NonNull RedisConnection connection, @NonNull Session session, long ttl) {
+        byte[] userKey = bytes(USER_KEY_PREFIX + session.getUserSnowflake());
+        connection.stringCommands().set(sessionKey(session.getSnowflake()), SessionCodec.encode(session),
+                Expiration.milliseconds(ttl), RedisStringCommands.SetOption.UPSERT);
+        // A migrated session may expire before the user's other sessions, so never shorten the ttl of the set
+        connection.scriptingCommands().eval(INDEX_SCRIPT, ReturnType.INTEGER, 1, userKey,
+                bytes(Long.toString(session.getSnowflake())), bytes(Long.toString(ttl)));
+    }
+
+    /**
+     * Find a session by an access token issued
+     * before tokens carried the session snowflake.
+     *
+     * @param accessToken the access token to search by
+     * @return the session, null if none
+     */
+    private Session findByLegacyAccessToken(@NonNull String accessToken) {
+        byte[] digest = HashUtils.rawDigest(accessToken);
+        byte[] snowflake = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key(LEGACY_TOKEN_KEY_PREFIX, digest)));
+        if (snowflake != null) { // Already migrated
+            Session session = findBySnowflake(Long.parseLong(new String(snowflake, StandardCharsets.UTF_8)));
+            return session != null && session.matchesAccessToken(accessToken) ? session : null;
+        }
+        byte[] encoded = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key(DIGEST_SESSION_KEY_PREFIX, digest)));
+        if (encoded != null) {
+            Session session = decode(encoded);
+            return session == null ? null : migrate(session, connection -> deleteDigestKeyed(connection, session));
+        }
+        Set<String> legacyIds = redisTemplate.opsForSet().members(LEGACY_KEYSPACE + ":accessToken:" + accessToken);
+        return legacyIds == null || legacyIds.isEmpty() ? null : migrateLegacy(legacyIds.iterator().next());
+    }
+
+    /**
+     * Get the values of the keys with the given
+     * prefix and suffixes in a single round trip.
+     *
+     * @param prefix   the key prefix
+     * @param suffixes the key suffixes
+     * @return the values, in the same order
+     */
+    @NonNull
+    private List<Object> getAll(@NonNull byte[] prefix, @NonNull List<byte[]> suffixes) {
+        if (suffixes.isEmpty()) {
+            return List.of();
+        }
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (byte[] suffix : suffixes) {
+                connection.stringCommands().get(key(prefix, suffix));
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    /**
+     * Decode the given session.
+     *
+     * @param encoded the encoded session
+     * @return the session, null if malformed
+     */
+    private Session decode(@NonNull byte[] encoded) {
+        try {
+            return SessionCodec.decode(encoded);
+        } catch (IllegalArgumentException ex) {
+            log.warn("Failed to decode session", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Migrate a session found in an older format
+     * to the current one, deleting the old session.
+     *
+     * @param session   the session to migrate
+     * @param deleteOld deletes the old session and its indexes
+     * @return the migrated session, null if it has expired
+     */
+    private Session migrate(@NonNull Session session, @NonNull Consumer<RedisConnection> deleteOld) {
+        long ttl = session.getExpires() - System.currentTimeMillis();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            if (ttl > 0L) {
+                write(connection, session, ttl);
+                connection.stringCommands().set(key(LEGACY_TOKEN_KEY_PREFIX, session.getAccessTokenDigest()),
+                        bytes(Long.toString(session.getSnowflake())), Expiration.milliseconds(ttl), RedisStringCommands.SetOption.UPSERT);
+            }
+            deleteOld.accept(connection);
+            return null;
+        });
+        return ttl > 0L ? session : null;
+    }
+
+    /**
+     * Delete a session keyed by the digest of its access token.
+     *
+     * @param connection the connection to delete with
+     * @param session    the session to delete
+     */
+    private void deleteDigestKeyed(@NonNull RedisConnection connection, @NonNull Session session) {
+        connection.keyCommands().del(key(DIGEST_SESSION_KEY_PREFIX, session.getAccessTokenDigest()),
+                key(DIGEST_REFRESH_KEY_PREFIX, session.getRefreshTokenDigest()));
+        connection.setCommands().sRem(bytes(DIGEST_USER_KEY_PREFIX + session.getUserSnowflake()), session.getAccessTokenDigest());
+    }
+
+    /**
+     * Migrate a session stored by Spring Data to
+     * the current format, deleting the legacy session.
+     *
+     * @param id the id of the legacy session
+     * @return the migrated session, null if it no longer exists
+     */
+    private Session migrateLegacy(@NonNull String id) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(LEGACY_KEYSPACE + ":" + id);
+        Session session = null;
+        if (!fields.isEmpty()) {
+            try {
+                session = new Session(Long.parseLong(id), Long.parseLong((String) fields.get("userSnowflake")),
+                        HashUtils.rawDigest((String) fields.get("accessToken")), HashUtils.rawDigest((String) fields.get("refreshToken")), null,
+                        new SessionLocation((String) fields.get(LEGACY_LOCATION_PREFIX + "ip"), (String) fields.get(LEGACY_LOCATION_PREFIX + "country"),
+                                (String) fields.get(LEGACY_LOCATION_PREFIX + "region"), (String) fields.get(LEGACY_LOCATION_PREFIX + "city"),
+                                (String) fields.get(LEGACY_LOCATION_PREFIX + "userAgent"), null, null),
+                        Long.parseLong((String) fields.get("expires")));
+            } catch (RuntimeException ex) {
+                log.warn("Failed to migrate legacy session {}", id, ex);
+            }
+        }
+        Consumer<RedisConnection> deleteOld = connection -> deleteLegacy(connection, id, fields);
+        if (session != null) {
+            return migrate(session, deleteOld);
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deleteOld.accept(connection);
+            return null;
+        });
+        return null;
+    }
+
+    /**
+     * Delete a legacy session and its indexes.
+     *
+     * @param connection the connection to delete with
+     * @param id         the id of the legacy session
+     * @param fields     the fields of the legacy session
+     */
+    private void deleteLegacy(@NonNull RedisConnection connection, @NonNull String id, @NonNull Map<Object, Object> fields) {
+        byte[] idBytes = bytes(id);
+        String sessionKey = LEGACY_KEYSPACE + ":" + id;
+        connection.keyCommands().del(bytes(sessionKey), bytes(sessionKey + ":phantom"), bytes(sessionKey + ":idx"));
+        connection.setCommands().sRem(bytes(LEGACY_KEYSPACE), idBytes);
+        for (String index : new String[] { "accessToken", "refreshToken", "userSnowflake" }) {
+            Object value = fields.get(index);
+            if (value != null) {
+                connection.setCommands().sRem(bytes(LEGACY_KEYSPACE + ":" + index + ":" + value), idBytes);
+            }
+        }
+    }
+
+    /**
+     * Get the members of a set from a pipelined result.
+     *
+     * @param result the pipelined result
+     * @return the members
+     */
+    @NonNull @SuppressWarnings("unchecked")
+    private static Set<byte[]> members(Object result) {
+        return result instanceof Set<?> set ? (Set<byte[]>) set : Set.of();
+    }
+
+    /**
+     * Get the key of the session with the given snowflake.
+     *
+     * @param snowflake the snowflake of the session
+     * @return the key
+     */
+    private static byte[] sessionKey(long snowflake) {
+        return key(SESSION_KEY_PREFIX, bytes(Long.toString(snowflake)));
+    }
+
+    /**
+     * Build a key from the given prefix and suffix.
+     *
+     * @param prefix the key prefix
+     * @param suffix the key suffix
+     * @return the key
+     */
+    private static byte[] key(@NonNull byte[] prefix, @NonNull byte[] suffix) {
+        return ByteBuffer.allocate(prefix.length + suffix.length).put(prefix).put(suffix).array();
+    }
+
+    /**
+     * Get the UTF-8 bytes of the given string.
+     *
+     * @param string the string
+     * @return the bytes
+     */
+    private static byte[] bytes(@NonNull String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -5,6 +5,7 @@ import lombok.NonNull;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -15,12 +16,13 @@ import java.util.List;
 @Repository
 public interface StatusPageRepository extends MongoRepository<StatusPage, Long> {
     /**
-     * Find a status page by its name.
+     * Find a status page by its normalized name.
      *
-     * @param name the name of the status page
+     * @param normalizedName the normalized name of the status page
      * @return the status page with the name
+     * @see cc.pulseapp.api.common.StringUtils#normalize(String)
      */
-    StatusPage findByNameIgnoreCase(@NonNull String name);
+    StatusPage findByNormalizedName(@NonNull String normalizedName);
 
     /**
      * Find the status pages that are
@@ -30,4 +32,13 @@ public interface StatusPageRepository extends MongoRepository<StatusPage, Long>
      * @return the list of status pages
      */
     List<StatusPage> findByOrgSnowflake(long orgSnowflake);
+
+    /**
+     * Find the status pages that are owned
+     * by any of the given organizations.
+     *
+     * @param orgSnowflakes the org snowflakes
+     * @return the list of status pages
+     */
+    List<StatusPage> findByOrgSnowflakeIn(@NonNull Collection<Long> orgSnowflakes);
 }
\ No newline at end of file
@@ -13,10 +13,11 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface UserRepository extends MongoRepository<User, Long> {
     /**
-     * Find a user by their email.
+     * Find a user by their normalized email.
      *
-     * @param email the email of the user
+     * @param normalizedEmail the normalized email of the user
      * @return the user with the email
+     * @see cc.pulseapp.api.common.StringUtils#normalize(String)
      */
-    User findByEmailIgnoreCase(@NonNull String email);
+    User findByNormalizedEmail(@NonNull String normalizedEmail);
 }
\ No newline at end of file
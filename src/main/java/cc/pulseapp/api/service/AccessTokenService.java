@@ -0,0 +1,313 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.EnvironmentUtils;
+import cc.pulseapp.api.model.user.session.AccessToken;
+import cc.pulseapp.api.model.user.session.Session;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This service is responsible for issuing and
+ * verifying short-lived, signed {@link AccessToken}'s.
+ * <p>
+ * Access tokens are {@code <session>.<user>.<expires>.<signature>},
+ * signed with HMAC-SHA256, so they are verified locally without
+ * a round trip to Redis. When a session is deleted, its snowflake
+ * is added to a revocation set in Redis (until every access token
+ * issued for it has expired) and broadcast to every node. Each node
+ * keeps the set in memory, and resyncs it periodically in case a
+ * broadcast was missed.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Access Tokens")
+public final class AccessTokenService {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String DEFAULT_SECRET = "CHANGE_ME";
+    private static final char SEPARATOR = '.';
+
+    /**
+     * The key of the sorted set of revoked sessions, scored
+     * by when their last access token expires.
+     */
+    private static final String REVOKED_KEY = "sessions:revoked";
+
+    /**
+     * The pub/sub channel to broadcast revoked sessions on.
+     */
+    private static final String REVOCATION_CHANNEL = "sessions:revoke";
+
+    /**
+     * The secret to sign access tokens with.
+     */
+    @Value("${auth.access-token.secret:" + DEFAULT_SECRET + "}")
+    private String secret;
+
+    /**
+     * How long (in seconds) an access token lasts.
+     */
+    @Value("${auth.access-token.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    /**
+     * How often (in seconds) to resync revoked sessions from Redis.
+     */
+    @Value("${auth.access-token.revocation-sync-seconds:15}")
+    private long revocationSyncSeconds;
+
+    /**
+     * The template to store revocations with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The container to listen for revocations with.
+     */
+    @NonNull private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * The revoked sessions.
+     * <p>
+     * The key is the session snowflake and the value
+     * is the unix timestamp of when the revocation can
+     * be forgotten, as every access token issued for the
+     * session has expired.
+     * </p>
+     */
+    private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+
+    /**
+     * The scheduler to resync revocations on.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Access Token Revocation Sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The MAC to sign access tokens with, cloned for the pool.
+     */
+    private Mac mac;
+
+    /**
+     * The pool of idle MACs, as a MAC isn't thread-safe.
+     * <p>
+     * A pool (rather than one per thread) is reused even
+     * when every request runs on a new virtual thread.
+     * </p>
+     */
+    private final Queue<Mac> macPool = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public AccessTokenService(@NonNull StringRedisTemplate redisTemplate, @NonNull RedisMessageListenerContainer listenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct @SneakyThrows
+    public void onInitialize() {
+        if (secret.equals(DEFAULT_SECRET)) {
+            if (EnvironmentUtils.isProduction()) {
+                throw new IllegalStateException("auth.access-token.secret must be set in production");
+            }
+            log.warn("Signing access tokens with the default secret, set auth.access-token.secret");
+        }
+        mac = Mac.getInstance(ALGORITHM);
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+
+        // Track sessions revoked on any node
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            if (parts.length == 2) {
+                long until = Long.parseLong(parts[1]);
+                for (String snowflake : parts[0].split(",")) {
+                    revoked.put(Long.parseLong(snowflake), until);
+                }
+            }
+        }, new ChannelTopic(REVOCATION_CHANNEL));
+        syncRevocations();
+        scheduler.scheduleAtFixedRate(this::syncRevocations, revocationSyncSeconds, revocationSyncSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Issue an access token for the given session.
+     * <p>
+     * The token never outlives the session.
+     * </p>
+     *
+     * @param session the session to issue for
+     * @return the session with the issued access token
+     */
+    @NonNull
+    public Session issue(@NonNull Session session) {
+        long expires = Math.min(session.getExpires(), System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds));
+        String payload = Long.toString(session.getSnowflake()) + SEPARATOR + session.getUserSnowflake() + SEPARATOR + expires;
+        return session.withAccessToken(payload + SEPARATOR + sign(payload), expires);
+    }
+
+    /**
+     * Verify the given access token.
+     *
+     * @param token the token to verify
+     * @return the verified token, null if invalid, expired, or revoked
+     */
+    public AccessToken verify(@NonNull String token) {
+        int signatureStart = token.lastIndexOf(SEPARATOR);
+        if (signatureStart < 0) {
+            return null;
+        }
+        String payload = token.substring(0, signatureStart);
+        String[] parts = payload.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        AccessToken accessToken;
+        try {
+            accessToken = new AccessToken(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        byte[] signature = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(signature, token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        if (accessToken.getExpires() <= System.currentTimeMillis() || revoked.containsKey(accessToken.getSessionSnowflake())) {
+            return null;
+        }
+        return accessToken;
+    }
+
+    /**
+     * Check if the given token is shaped like a signed access token,
+     * as opposed to the long-lived tokens issued before them.
+     *
+     * @param token the token to check
+     * @return whether the token is signed
+     */
+    public boolean isSigned(@NonNull String token) {
+        int separators = 0;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) == SEPARATOR) {
+                separators++;
+            }
+        }
+        return separators == 3;
+    }
+
+    /**
+     * Revoke every access token issued for the given sessions,
+     * on this node and then on every other node.
+     *
+     * @param sessionSnowflakes the snowflakes of the sessions to revoke
+     */
+    public void revoke(@NonNull Collection<Long> sessionSnowflakes) {
+        if (sessionSnowflakes.isEmpty()) {
+            return;
+        }
+        long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        StringBuilder snowflakes = new StringBuilder();
+        for (long snowflake : sessionSnowflakes) {
+            revoked.put(snowflake, until);
+            if (!snowflakes.isEmpty()) {
+                snowflakes.append(',');
+            }
+            snowflakes.append(snowflake);
+        }
+        try {
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+            for (long snowflake : sessionSnowflakes) {
+                tuples.add(ZSetOperations.TypedTuple.of(Long.toString(snowflake), (double) until));
+            }
+            redisTemplate.opsForZSet().add(REVOKED_KEY, tuples);
+            redisTemplate.convertAndSend(REVOCATION_CHANNEL, snowflakes + ":" + until);
+        } catch (Exception ex) {
+            log.error("Failed to broadcast access token revocation", ex);
+        }
+    }
+
+    /**
+     * Replace the local revocations with the
+     * ones in Redis, forgetting expired ones.
+     */
+    private void syncRevocations() {
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().removeRangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet().rangeByScoreWithScores(REVOKED_KEY, now, Double.POSITIVE_INFINITY);
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    if (tuple.getValue() != null && tuple.getScore() != null) {
+                        revoked.merge(Long.parseLong(tuple.getValue()), tuple.getScore().longValue(), Long::max);
+                    }
+                }
+            }
+            revoked.values().removeIf(until -> until <= now);
+        } catch (Exception ex) {
+            log.warn("Failed to sync access token revocations", ex);
+        }
+    }
+
+    /**
+     * Sign the given payload.
+     *
+     * @param payload the payload to sign
+     * @return the url-safe base64 signature
+     */
+    @NonNull
+    private String sign(@NonNull String payload) {
+        Mac pooled = macPool.poll();
+        if (pooled == null) {
+            pooled = cloneMac();
+        }
+        byte[] signature;
+        try {
+            signature = pooled.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            macPool.offer(pooled); // doFinal resets the MAC
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    /**
+     * Clone the initialized MAC.
+     *
+     * @return the cloned MAC
+     */
+    @NonNull @SneakyThrows
+    private Mac cloneMac() {
+        return (Mac) mac.clone();
+    }
+}
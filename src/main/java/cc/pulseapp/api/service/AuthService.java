@@ -1,38 +1,74 @@
 package cc.pulseapp.api.service;
 
-import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.common.GenerationGuardedCache;
+import cc.pulseapp.api.common.RequestUtils;
 import cc.pulseapp.api.common.StringUtils;
+import cc.pulseapp.api.common.TokenUtils;
 import cc.pulseapp.api.common.Tuple;
 import cc.pulseapp.api.exception.impl.BadRequestException;
 import cc.pulseapp.api.exception.impl.ResourceNotFoundException;
+import cc.pulseapp.api.exception.impl.TooManyRequestsException;
 import cc.pulseapp.api.model.Feature;
 import cc.pulseapp.api.model.IGenericResponse;
+import cc.pulseapp.api.model.user.TFAProfile;
 import cc.pulseapp.api.model.user.User;
 import cc.pulseapp.api.model.user.UserDTO;
 import cc.pulseapp.api.model.user.UserFlag;
 import cc.pulseapp.api.model.user.UserTier;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.DeviceType;
+import cc.pulseapp.api.model.user.input.SessionRefreshInput;
 import cc.pulseapp.api.model.user.input.UserLoginInput;
 import cc.pulseapp.api.model.user.input.UserRegistrationInput;
 import cc.pulseapp.api.model.user.response.UserAuthResponse;
+import cc.pulseapp.api.model.user.session.AccessToken;
 import cc.pulseapp.api.model.user.session.Session;
 import cc.pulseapp.api.model.user.session.SessionLocation;
 import cc.pulseapp.api.repository.SessionRepository;
 import cc.pulseapp.api.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * @author Braydon
  */
-@Service
+@Service @Log4j2(topic = "Auth")
 public final class AuthService {
+    /**
+     * The pub/sub channel to broadcast changed users on.
+     */
+    private static final String USER_INVALIDATION_CHANNEL = "users:invalidate";
+
+    /**
+     * The request attribute the authenticated user is stored under.
+     */
+    private static final String USER_ATTRIBUTE = AuthService.class.getName() + ".user";
+
+    /**
+     * How long (in days) a session lasts from login.
+     */
+    @Value("${auth.session-ttl-days:30}")
+    private long sessionTtlDays;
+
     /**
      * The service to use for captcha validation.
      */
@@ -48,6 +84,11 @@ public final class AuthService {
      */
     @NonNull private final TFAService tfaService;
 
+    /**
+     * The service to use for password hashing.
+     */
+    @NonNull private final HashingService hashingService;
+
     /**
      * The repository to store and retrieve users.
      */
@@ -58,15 +99,84 @@ public final class AuthService {
      */
     @NonNull private final SessionRepository sessionRepository;
 
+    /**
+     * The service to resolve and rotate sessions with.
+     */
+    @NonNull private final SessionService sessionService;
+
+    /**
+     * The service to issue access tokens with.
+     */
+    @NonNull private final AccessTokenService accessTokenService;
+
+    /**
+     * The service to classify user agents with.
+     */
+    @NonNull private final UserAgentService userAgentService;
+
+    /**
+     * The service to rate limit credential attempts with.
+     */
+    @NonNull private final RateLimitService rateLimitService;
+
+    /**
+     * The template to publish user invalidations with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The container to listen for user invalidations with.
+     */
+    @NonNull private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * The id of this node, used to ignore our own invalidations.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * The local cache of user snapshots.
+     * <p>
+     * The key is the user's snowflake and the value is
+     * the last saved (or read) snapshot of the user. A
+     * copy of the snapshot is handed out on every read
+     * so callers are free to mutate it.
+     * </p>
+     */
+    private final GenerationGuardedCache<Long, User> userCache = new GenerationGuardedCache<>(Caffeine.newBuilder()
+            .maximumSize(10_000L)
+            .expireAfterWrite(1L, TimeUnit.MINUTES)
+            .build());
+
     @Autowired
     public AuthService(@NonNull CaptchaService captchaService, @NonNull SnowflakeService snowflakeService,
-                       @NonNull TFAService tfaService, @NonNull UserRepository userRepository,
-                       @NonNull SessionRepository sessionRepository) {
+                       @NonNull TFAService tfaService, @NonNull HashingService hashingService,
+                       @NonNull UserRepository userRepository, @NonNull SessionRepository sessionRepository,
+                       @NonNull SessionService sessionService, @NonNull AccessTokenService accessTokenService,
+                       @NonNull UserAgentService userAgentService, @NonNull RateLimitService rateLimitService, @NonNull StringRedisTemplate redisTemplate, @NonNull RedisMessageListenerContainer listenerContainer) {
         this.captchaService = captchaService;
         this.snowflakeService = snowflakeService;
         this.tfaService = tfaService;
+        this.hashingService = hashingService;
         this.userRepository = userRepository;
         this.sessionRepository = sessionRepository;
+        this.sessionService = sessionService;
+        this.accessTokenService = accessTokenService;
+        this.userAgentService = userAgentService;
+        this.rateLimitService = rateLimitService;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        // Evict users that were changed on other nodes
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            if (parts.length == 2 && !parts[0].equals(nodeId)) {
+                userCache.invalidate(Long.parseLong(parts[1]));
+            }
+        }, new ChannelTopic(USER_INVALIDATION_CHANNEL));
     }
 
     /**
@@ -76,27 +186,33 @@ public final class AuthService {
      * @param input   the registration input
      * @return the user auth response
      * @throws BadRequestException if the input has an error
+     * @throws TooManyRequestsException if too many attempts were made
      */
     @NonNull
-    public UserAuthResponse registerUser(@NonNull HttpServletRequest request, UserRegistrationInput input) throws BadRequestException {
+    public UserAuthResponse registerUser(@NonNull HttpServletRequest request, UserRegistrationInput input) throws BadRequestException, TooManyRequestsException {
         // Ensure user registration is enabled
         if (!Feature.USER_REGISTRATION_ENABLED.isEnabled()) {
             throw new BadRequestException(Error.REGISTRATION_DISABLED);
         }
         validateRegistrationInput(input); // Ensure the input is valid
+        rateLimitService.checkAttempt("register", request, input.getEmail()); // Before any expensive work
+
+        // Validate the captcha while looking up the email
+        CompletableFuture<Void> captcha = captchaService.validateCaptchaAsync("register", request, input.getCaptchaResponse());
+        User existingUser = userRepository.findByNormalizedEmail(StringUtils.normalize(input.getEmail()));
+        captchaService.await(captcha);
 
         // Ensure the given email hasn't been used before
-        if (userRepository.findByEmailIgnoreCase(input.getEmail()) != null) {
+        if (existingUser != null) {
             throw new BadRequestException(Error.EMAIL_ALREADY_USED);
         }
 
         // Create the user and return it
-        byte[] salt = HashUtils.generateSalt();
         Date now = new Date();
-        User user = userRepository.save(new User(
-                snowflakeService.generateSnowflake(), input.getEmail(), input.getUsername().toLowerCase(),
-                HashUtils.hash(salt, input.getPassword()), Base64.getEncoder().encodeToString(salt),
-                null, UserTier.FREE, null, 0, now
+        User user = saveUser(new User(
+                snowflakeService.generateSnowflake(), input.getEmail(), StringUtils.normalize(input.getEmail()), input.getUsername().toLowerCase(),
+                hashingService.hashPassword(input.getPassword()), null,
+                null, UserTier.FREE, null, 0, now, 0L
         ));
         return new UserAuthResponse(generateSession(request, user), UserDTO.asDTO(user, now));
     }
@@ -108,18 +224,24 @@ public final class AuthService {
      * @param input   the login input
      * @return the user auth response
      * @throws BadRequestException if the input has an error
+     * @throws TooManyRequestsException if too many attempts were made
      */
     @NonNull
-    public UserAuthResponse loginUser(@NonNull HttpServletRequest request, UserLoginInput input) throws BadRequestException {
+    public UserAuthResponse loginUser(@NonNull HttpServletRequest request, UserLoginInput input) throws BadRequestException, TooManyRequestsException {
         validateLoginInput(input); // Ensure the input is valid
+        rateLimitService.checkAttempt("login", request, input.getEmail()); // Before any expensive work
+
+        // Validate the captcha while looking up the user by the email
+        CompletableFuture<Void> captcha = captchaService.validateCaptchaAsync("login", request, input.getCaptchaResponse());
+        User user = userRepository.findByNormalizedEmail(StringUtils.normalize(input.getEmail()));
+        captchaService.await(captcha);
 
-        // Lookup the user by the email or username and ensure the user exists
-        User user = userRepository.findByEmailIgnoreCase(input.getEmail());
+        // Ensure the user exists
         if (user == null) {
             throw new BadRequestException(Error.USER_NOT_FOUND);
         }
         // Ensure the password matches
-        if (!HashUtils.hash(Base64.getDecoder().decode(user.getPasswordSalt()), input.getPassword()).equals(user.getPassword())) {
+        if (!hashingService.verifyPassword(input.getPassword(), user.getPassword(), user.getPasswordSalt())) {
             throw new BadRequestException(Error.PASSWORDS_DO_NOT_MATCH);
         }
         // Handle the two-factor auth pin if the user has it enabled
@@ -130,12 +252,65 @@ public final class AuthService {
             }
             useTfaPin(user, pin); // Attempt to use the pin
         }
+        // Upgrade the password hash if it's outdated
+        if (hashingService.needsRehash(user.getPassword())) {
+            user.setPassword(hashingService.hashPassword(input.getPassword()));
+            user.setPasswordSalt(null);
+        }
         user.setLastLogin(new Date());
-        user = userRepository.save(user);
+        user = saveUser(user);
         return new UserAuthResponse(generateSession(request, user),
                 UserDTO.asDTO(user, new Date(snowflakeService.extractCreationTime(user.getSnowflake()))));
     }
 
+    /**
+     * Refresh a session, rotating its refresh
+     * token and issuing a new access token.
+     * <p>
+     * Refresh tokens are single use, if the refresh token the
+     * session was last rotated from is used again it may have
+     * been stolen, so the session is deleted. Any other token
+     * that doesn't match is just rejected, as the session
+     * snowflake in a token is easy to guess.
+     * </p>
+     *
+     * @param request the http request
+     * @param input   the refresh input
+     * @return the user auth response
+     * @throws BadRequestException if the refresh token is invalid
+     * @throws TooManyRequestsException if too many attempts were made
+     */
+    @NonNull
+    public UserAuthResponse refreshSession(@NonNull HttpServletRequest request, SessionRefreshInput input) throws BadRequestException, TooManyRequestsException {
+        if (input == null || (!input.isValid())) { // Ensure the input was provided
+            throw new BadRequestException(Error.MALFORMED_REFRESH_INPUT);
+        }
+        rateLimitService.checkAttempt("refresh", request, null);
+        String refreshToken = input.getRefreshToken();
+        long snowflake = TokenUtils.getSessionSnowflake(refreshToken);
+        Session session = snowflake == -1L ? null : sessionService.getSession(snowflake);
+        if (session == null) {
+            throw new BadRequestException(Error.REFRESH_TOKEN_INVALID);
+        }
+        if (!session.matchesRefreshToken(refreshToken)) {
+            if (session.matchesRetiredRefreshToken(refreshToken)) { // Reused, delete the session to be safe
+                log.warn("Refresh token reused for session {}, deleting it", snowflake);
+                sessionService.deleteSessions(List.of(session));
+            }
+            throw new BadRequestException(Error.REFRESH_TOKEN_INVALID);
+        }
+        User user = getUserFromSnowflake(session.getUserSnowflake());
+        if (user.hasFlag(UserFlag.DISABLED)) { // User's account has been disabled
+            throw new BadRequestException(Error.USER_DISABLED);
+        }
+        Session rotated = session.rotate(TokenUtils.generateToken(snowflake));
+        if (!sessionService.rotateSession(session, rotated)) { // Rotated by a concurrent refresh
+            throw new BadRequestException(Error.REFRESH_TOKEN_INVALID);
+        }
+        return new UserAuthResponse(accessTokenService.issue(rotated),
+                UserDTO.asDTO(user, new Date(snowflakeService.extractCreationTime(user.getSnowflake()))));
+    }
+
     /**
      * Use a TFA pin for a user.
      *
@@ -150,23 +325,20 @@ public final class AuthService {
         if (!user.hasFlag(UserFlag.TFA_ENABLED)) { // Ensure TFA is already on
             throw new BadRequestException(Error.TFA_NOT_ENABLED);
         }
-        String encryptedPin = HashUtils.hash(Base64.getDecoder().decode(user.getTfa().getBackupCodesSalt()), pin);
+        TFAProfile tfa = user.getTfa();
 
-        // Before checking the pin, check the user's backup codes
-        for (String backupCode : user.getTfa().getBackupCodes()) {
-            if (!encryptedPin.equals(backupCode)) {
-                continue;
-            }
-            // The code is a valid backup code, remove it from the user's list
-            user.getTfa().getBackupCodes().remove(backupCode);
-            userRepository.save(user);
+        // Check if the TFA pin is valid first, as it's cheap
+        if (tfaService.getPin(tfa.getSecret()).equals(pin)) {
             return;
         }
-
-        // Check if the TFA pin is valid
-        if (!tfaService.getPin(user.getTfa().getSecret()).equals(pin)) {
+        // Otherwise check the user's backup codes
+        String backupCode = hashingService.findMatchingHash(pin, tfa.getBackupCodes(), tfa.getBackupCodesSalt());
+        if (backupCode == null) {
             throw new BadRequestException(Error.TFA_PIN_INVALID);
         }
+        // The code is a valid backup code, remove it from the user's list
+        tfa.getBackupCodes().remove(backupCode);
+        saveUser(user);
     }
 
     /**
@@ -177,19 +349,29 @@ public final class AuthService {
      */
     @NonNull
     public User getAuthenticatedUser() throws ResourceNotFoundException {
-        return getSessionAndUser().getRight();
+        return getAccessTokenAndUser().getRight();
     }
 
     /**
-     * Get the authenticated session and associated user.
+     * Get the authenticated access token and associated user.
      *
-     * @return the authenticated session and user
+     * @return the authenticated access token and user
      * @throws ResourceNotFoundException if the user doesn't exist
      */
     @NonNull
-    public Tuple<Session, User> getSessionAndUser() throws ResourceNotFoundException {
-        Session session = (Session) SecurityContextHolder.getContext().getAuthentication().getCredentials();
-        return new Tuple<>(session, getUserFromSnowflake(session.getUserSnowflake()));
+    public Tuple<AccessToken, User> getAccessTokenAndUser() throws ResourceNotFoundException {
+        AccessToken accessToken = (AccessToken) SecurityContextHolder.getContext().getAuthentication().getCredentials();
+
+        // Resolve the user at most once per request
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        User user = attributes == null ? null : (User) attributes.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (user == null) {
+            user = getUserFromSnowflake(accessToken.getUserSnowflake());
+            if (attributes != null) {
+                attributes.setAttribute(USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+        return new Tuple<>(accessToken, user);
     }
 
     /**
@@ -205,19 +387,44 @@ public final class AuthService {
         if (snowflake < 1L) {
             throw new ResourceNotFoundException(Error.USER_NOT_FOUND);
         }
-        User user = userRepository.findById(snowflake).orElse(null);
+        User user = userCache.get(snowflake, key -> userRepository.findById(key).orElse(null));
         if (user == null) {
             throw new ResourceNotFoundException(Error.USER_NOT_FOUND);
         }
-        return user;
+        return user.copy();
+    }
+
+    /**
+     * Save the given user.
+     * <p>
+     * The version of the user is bumped, the local
+     * snapshot is replaced, and every other node is
+     * told to drop its snapshot of the user.
+     * </p>
+     *
+     * @param user the user to save
+     * @return the saved user
+     */
+    @NonNull
+    public User saveUser(@NonNull User user) {
+        user.setVersion(user.getVersion() + 1L);
+        User saved = userRepository.save(user);
+        userCache.put(saved.getSnowflake(), saved.copy());
+        try {
+            redisTemplate.convertAndSend(USER_INVALIDATION_CHANNEL, nodeId + ":" + saved.getSnowflake());
+        } catch (Exception ex) {
+            log.error("Failed to broadcast user invalidation", ex);
+        }
+        return saved;
     }
 
     /**
-     * Generate an auth token for a user.
+     * Generate a session for a user, along
+     * with its first access token.
      *
      * @param request the http request
      * @param user    the user to generate for
-     * @return the generated auth token
+     * @return the generated session
      * @throws BadRequestException if the user is disabled
      */
     @NonNull
@@ -226,13 +433,16 @@ public final class AuthService {
         if (user.hasFlag(UserFlag.DISABLED)) {
             throw new BadRequestException(Error.USER_DISABLED);
         }
-        return sessionRepository.save(new Session(
-                snowflakeService.generateSnowflake(), user.getSnowflake(),
-                StringUtils.generateRandom(128, true, true, false),
-                StringUtils.generateRandom(128, true, true, false),
-                SessionLocation.buildFromRequest(request),
-                System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30L)
+        long snowflake = snowflakeService.generateSnowflake();
+        Tuple<DeviceType, BrowserType> userAgent = userAgentService.classifyForStorage(RequestUtils.getUserAgent(request));
+        Session session = sessionRepository.save(new Session(
+                snowflake, user.getSnowflake(),
+                TokenUtils.generateToken(snowflake),
+                SessionLocation.buildFromRequest(request, userAgent == null ? null : userAgent.getLeft(),
+                        userAgent == null ? null : userAgent.getRight()),
+                System.currentTimeMillis() + TimeUnit.DAYS.toMillis(sessionTtlDays)
         ));
+        return accessTokenService.issue(session);
     }
 
     /**
@@ -259,8 +469,6 @@ public final class AuthService {
         if (passwordError != null) {
             throw new BadRequestException(passwordError);
         }
-        // Finally validate the captcha
-        captchaService.validateCaptcha(input.getCaptchaResponse());
     }
 
     /**
@@ -276,8 +484,6 @@ public final class AuthService {
         if (!StringUtils.isValidEmail(input.getEmail())) { // Ensure the email is valid
             throw new BadRequestException(Error.EMAIL_INVALID);
         }
-        // Finally validate the captcha
-        captchaService.validateCaptcha(input.getCaptchaResponse());
     }
 
     /**
@@ -295,6 +501,8 @@ public final class AuthService {
         TFA_NOT_ENABLED,
         TFA_PIN_INVALID,
         EMAIL_ALREADY_USED,
-        USER_DISABLED
+        USER_DISABLED,
+        MALFORMED_REFRESH_INPUT,
+        REFRESH_TOKEN_INVALID
     }
 }
\ No newline at end of file
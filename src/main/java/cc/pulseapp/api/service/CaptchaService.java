@@ -1,45 +1,212 @@
 package cc.pulseapp.api.service;
 
+import cc.pulseapp.api.captcha.CaptchaVerifier;
+import cc.pulseapp.api.captcha.impl.TurnstileCaptchaVerifier;
+import cc.pulseapp.api.common.CircuitBreaker;
 import cc.pulseapp.api.common.EnvironmentUtils;
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.common.RequestUtils;
 import cc.pulseapp.api.exception.impl.BadRequestException;
+import cc.pulseapp.api.exception.impl.ServiceUnavailableException;
 import cc.pulseapp.api.model.IGenericResponse;
-import com.google.gson.JsonObject;
-import kong.unirest.core.HttpResponse;
-import kong.unirest.core.JsonNode;
-import kong.unirest.core.Unirest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.*;
+
 /**
+ * This service is responsible for validating
+ * captcha responses without tying up request threads.
+ * <p>
+ * Verifications run asynchronously with a strict timeout,
+ * are bounded by {@link #maxConcurrent}, and are guarded
+ * by a {@link CircuitBreaker} so a slow or unavailable
+ * upstream fails fast. A verified token is remembered
+ * briefly for a single retry of the same action from the
+ * same IP (e.g. a login re-submitted with a TFA pin), so
+ * it isn't rejected as a replay by the upstream.
+ * </p>
+ *
  * @author Braydon
  */
-@Service
+@Service @Log4j2(topic = "Captcha")
 public final class CaptchaService {
-    @Value("${captcha.secret}")
-    private String secretKey;
+    /**
+     * The id of the verifier to use outside of production.
+     */
+    @Value("${captcha.verifier:stub}")
+    private String verifierId;
+
+    /**
+     * The max time (in millis) to wait for a verification.
+     */
+    @Value("${captcha.timeout-millis:3000}")
+    private long timeoutMillis;
+
+    /**
+     * The max number of verifications in flight at once.
+     */
+    @Value("${captcha.max-concurrent:64}")
+    private int maxConcurrent;
+
+    /**
+     * The number of consecutive failures before the circuit opens.
+     */
+    @Value("${captcha.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    /**
+     * The time (in millis) the circuit stays open for.
+     */
+    @Value("${captcha.circuit-breaker.open-millis:30000}")
+    private long openMillis;
+
+    /**
+     * The registered verifiers.
+     */
+    @NonNull private final List<CaptchaVerifier> verifiers;
+
+    /**
+     * The verifier to use.
+     */
+    private CaptchaVerifier verifier;
+
+    /**
+     * The circuit breaker guarding the verifier.
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * The permits for in flight verifications.
+     */
+    private Semaphore permits;
+
+    /**
+     * A cache of recently verified tokens, each
+     * removed on the first retry that uses it.
+     * <p>
+     * The key is the digest of the action,
+     * the IP, and the token.
+     * </p>
+     */
+    private final Cache<String, Boolean> verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(10_000L)
+            .expireAfterWrite(5L, TimeUnit.MINUTES)
+            .build();
+
+    @Autowired
+    public CaptchaService(@NonNull List<CaptchaVerifier> verifiers) {
+        this.verifiers = verifiers;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        String id = EnvironmentUtils.isProduction() ? TurnstileCaptchaVerifier.ID : verifierId; // Always use Turnstile in production
+        verifier = verifiers.stream()
+                .filter(candidate -> candidate.getId().equals(id))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown captcha verifier: " + id));
+        circuitBreaker = new CircuitBreaker(failureThreshold, openMillis);
+        permits = new Semaphore(maxConcurrent);
+        log.info("Using the {} captcha verifier", id);
+    }
 
     /**
      * Validates the captcha response.
      *
+     * @param action          the action the captcha guards (e.g. "login")
+     * @param request         the http request
      * @param captchaResponse the response to validate
-     * @throws BadRequestException if the response is invalid
-     */
-    public void validateCaptcha(@NonNull String captchaResponse) throws BadRequestException {
-        JsonObject body = new JsonObject();
-        body.addProperty("secret", secretKey);
-        body.addProperty("response", captchaResponse);
-        HttpResponse<JsonNode> response = Unirest.post("https://challenges.cloudflare.com/turnstile/v0/siteverify")
-                .header(HttpHeaders.CONTENT_TYPE, "application/json")
-                .body(body)
-                .asJson();
-        if (EnvironmentUtils.isProduction() && !response.getBody().getObject().getBoolean("success")) {
-            throw new BadRequestException(Error.CAPTCHA_INVALID);
+     * @throws BadRequestException         if the response is invalid
+     * @throws ServiceUnavailableException if the response couldn't be verified
+     */
+    public void validateCaptcha(@NonNull String action, @NonNull HttpServletRequest request,
+                                @NonNull String captchaResponse) throws BadRequestException, ServiceUnavailableException {
+        await(validateCaptchaAsync(action, request, captchaResponse));
+    }
+
+    /**
+     * Start validating the captcha response.
+     * <p>
+     * The future completes exceptionally with a
+     * {@link BadRequestException} if the response is invalid,
+     * or a {@link ServiceUnavailableException} if it couldn't
+     * be verified. Use {@link #await(CompletableFuture)} to
+     * wait for the result.
+     * </p>
+     *
+     * @param action          the action the captcha guards (e.g. "login")
+     * @param request         the http request
+     * @param captchaResponse the response to validate
+     * @return the future of the validation
+     */
+    @NonNull
+    public CompletableFuture<Void> validateCaptchaAsync(@NonNull String action, @NonNull HttpServletRequest request,
+                                                        @NonNull String captchaResponse) {
+        String key = HashUtils.digest(action + ":" + RequestUtils.getRealIp(request) + ":" + captchaResponse);
+        if (verifiedTokens.asMap().remove(key) != null) { // Verified for this action and IP, consume the retry
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!permits.tryAcquire()) { // Too many verifications in flight
+            return CompletableFuture.failedFuture(new ServiceUnavailableException(Error.CAPTCHA_UNAVAILABLE));
+        }
+        if (!circuitBreaker.allowRequest()) { // Upstream is unhealthy
+            permits.release();
+            return CompletableFuture.failedFuture(new ServiceUnavailableException(Error.CAPTCHA_UNAVAILABLE));
+        }
+        CompletableFuture<Boolean> verification;
+        try {
+            verification = verifier.verify(captchaResponse);
+        } catch (Exception ex) {
+            verification = CompletableFuture.failedFuture(ex);
+        }
+        return verification.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).handle((success, ex) -> {
+            permits.release();
+            if (ex != null) {
+                circuitBreaker.recordFailure();
+                log.warn("Failed to verify captcha: {}", ex.getMessage());
+                throw new CompletionException(new ServiceUnavailableException(Error.CAPTCHA_UNAVAILABLE));
+            }
+            circuitBreaker.recordSuccess();
+            if (!Boolean.TRUE.equals(success)) {
+                throw new CompletionException(new BadRequestException(Error.CAPTCHA_INVALID));
+            }
+            verifiedTokens.put(key, true);
+            return null;
+        });
+    }
+
+    /**
+     * Wait for the given captcha validation to complete.
+     *
+     * @param validation the validation to wait for
+     * @throws BadRequestException         if the response is invalid
+     * @throws ServiceUnavailableException if the response couldn't be verified
+     */
+    public void await(@NonNull CompletableFuture<Void> validation) throws BadRequestException, ServiceUnavailableException {
+        try {
+            validation.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(Error.CAPTCHA_UNAVAILABLE);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ServiceUnavailableException(Error.CAPTCHA_UNAVAILABLE);
         }
     }
 
     public enum Error implements IGenericResponse {
-        CAPTCHA_INVALID
+        CAPTCHA_INVALID,
+        CAPTCHA_UNAVAILABLE
     }
-}
\ No newline at end of file
+}
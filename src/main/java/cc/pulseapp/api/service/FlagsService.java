@@ -1,27 +1,73 @@
 package cc.pulseapp.api.service;
 
+import cc.pulseapp.api.common.GenerationGuardedCache;
 import cc.pulseapp.api.model.Feature;
+import cc.pulseapp.api.model.FeatureFlags;
+import cc.pulseapp.api.model.org.Organization;
+import cc.pulseapp.api.model.user.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.flagsmith.FlagsmithClient;
+import com.flagsmith.config.FlagsmithConfig;
 import com.flagsmith.models.BaseFlag;
+import com.flagsmith.models.Flags;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
-import lombok.SneakyThrows;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
  * This service is responsible for
  * fetching remote feature flags.
+ * <p>
+ * The environment flags are published as an immutable
+ * {@link FeatureFlags} snapshot on a jittered interval (so
+ * replicas don't refresh in lockstep). With a server-side key,
+ * flags can be evaluated locally from the Flagsmith environment
+ * document, which the client keeps up-to-date in the background,
+ * so flags targeted at a user or organization don't need a
+ * network call either. Without local evaluation, users and
+ * organizations get the environment flags, as evaluating
+ * them remotely would block the request on Flagsmith.
+ * </p>
+ * <p>
+ * The last good environment flags are persisted to a local file
+ * and loaded synchronously at startup, so a new replica serves
+ * with the last known flags from its first request, even if
+ * Flagsmith is unreachable. In offline mode only the persisted
+ * flags are used, and Flagsmith is never contacted.
+ * </p>
  *
  * @author Braydon
  */
 @Service @Log4j2(topic = "Flags")
 public final class FlagsService {
-    private static final long FETCH_INTERVAL = TimeUnit.SECONDS.toMillis(30L);
+    private static final String SERVER_KEY_PREFIX = "ser.";
+
+    /**
+     * Whether flags should be fetched from Flagsmith.
+     */
+    @Value("${flagsmith.enabled:true}")
+    private boolean enabled;
 
     @Value("${flagsmith.api-url}")
     private String apiUrl;
@@ -29,36 +75,315 @@ public final class FlagsService {
     @Value("${flagsmith.api-key}")
     private String apiKey;
 
+    /**
+     * Whether to evaluate flags locally, this requires a server-side key.
+     */
+    @Value("${flagsmith.local-evaluation:false}")
+    private boolean localEvaluation;
+
+    /**
+     * How often (in seconds) to refresh flags.
+     */
+    @Value("${flagsmith.refresh-seconds:30}")
+    private long refreshSeconds;
+
+    /**
+     * The max random delay (in seconds) added to each refresh.
+     */
+    @Value("${flagsmith.refresh-jitter-seconds:5}")
+    private long refreshJitterSeconds;
+
+    /**
+     * The number of user and organization snapshots to cache.
+     */
+    @Value("${flagsmith.identity-cache-size:10000}")
+    private long identityCacheSize;
+
+    /**
+     * Whether to only use the persisted flags, without contacting Flagsmith.
+     */
+    @Value("${flagsmith.offline:false}")
+    private boolean offline;
+
+    /**
+     * The file to persist the last good flags to, blank to not persist them.
+     */
+    @Value("${flagsmith.snapshot-file:flags-snapshot.json}")
+    private String snapshotFile;
+
+    /**
+     * The mapper to read and write the persisted flags with.
+     */
+    @NonNull private final ObjectMapper objectMapper;
+
+    /**
+     * The registry to publish metrics to.
+     */
+    @NonNull private final MeterRegistry meterRegistry;
+
+    /**
+     * The unix timestamp of when the current environment
+     * flags were last fetched from Flagsmith, 0 if never.
+     */
+    private volatile long lastFetched;
+
+    /**
+     * The counter tracking failed refreshes.
+     */
+    private Counter refreshFailures;
+
     /**
      * The Flagsmith client.
      */
     private FlagsmithClient client;
 
+    /**
+     * The scheduler to refresh flags on.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Flags Refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The local cache of identity snapshots.
+     * <p>
+     * The key is the identifier of the user or
+     * organization and the value is its snapshot.
+     * </p>
+     */
+    private GenerationGuardedCache<String, FeatureFlags> identityCache;
+
+    @Autowired
+    public FlagsService(@NonNull ObjectMapper objectMapper, @NonNull MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
     @PostConstruct
     public void onInitialize() {
-        client = FlagsmithClient.newBuilder()
-                .withApiUrl(apiUrl)
-                .setApiKey(apiKey)
-                .build();
-
-        // Schedule a task to fetch all flags
-        new Timer().scheduleAtFixedRate(new TimerTask() {
-            @Override @SneakyThrows
-            public void run() {
-                int oldFlags = Feature.hash();
-                for (BaseFlag flag : client.getEnvironmentFlags().getAllFlags()) {
-                    Feature feature = Feature.getById(flag.getFeatureName());
-                    if (feature == null) {
-                        continue;
-                    }
-                    Object value = flag.getValue();
-                    feature.setEnabled(flag.getEnabled());
-                    feature.setValue(value instanceof String stringedValue && (stringedValue.isBlank()) ? null : value);
-                }
-                if (oldFlags != Feature.hash()) {
-                    log.info("Fetched new flags (:");
+        if (!enabled) { // Run with every feature enabled locally
+            FeatureFlags.publish(FeatureFlags.ALL);
+            log.info("Flagsmith is disabled, enabled all features locally");
+            return;
+        }
+        Gauge.builder("flags.snapshot.age", this, service -> service.lastFetched == 0L ? Double.NaN
+                        : (System.currentTimeMillis() - service.lastFetched) / 1000D)
+                .description("Seconds since the current flags were fetched from Flagsmith")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        refreshFailures = Counter.builder("flags.refresh.failures")
+                .description("Failed attempts to refresh flags from Flagsmith")
+                .register(meterRegistry);
+
+        // Serve with the last known flags until Flagsmith answers
+        boolean loaded = loadSnapshot();
+        if (offline) {
+            if (!loaded) {
+                log.warn("Flagsmith is in offline mode without persisted flags, every feature is disabled");
+            }
+            return;
+        }
+        if (localEvaluation && !apiKey.startsWith(SERVER_KEY_PREFIX)) { // The client refuses to build otherwise
+            log.warn("Local evaluation requires a server-side Flagsmith key, only using the environment flags");
+            localEvaluation = false;
+        }
+        if (localEvaluation) {
+            identityCache = new GenerationGuardedCache<>(Caffeine.newBuilder()
+                    .maximumSize(identityCacheSize)
+                    .expireAfterWrite(refreshSeconds, TimeUnit.SECONDS) // Identity overrides can change without the environment flags
+                    .build());
+        }
+        try {
+            client = FlagsmithClient.newBuilder()
+                    .withApiUrl(apiUrl)
+                    .setApiKey(apiKey)
+                    .withConfiguration(FlagsmithConfig.newBuilder()
+                            .withLocalEvaluation(localEvaluation)
+                            .withEnvironmentRefreshIntervalSeconds((int) refreshSeconds)
+                            .build())
+                    .build();
+        } catch (Exception ex) {
+            log.error("Failed to create the Flagsmith client, {}", loaded ? "serving the persisted flags"
+                    : "every feature is disabled", ex);
+            return;
+        }
+        if (loaded) {
+            scheduler.execute(this::refresh);
+        } else { // Nothing to serve with, wait for the first refresh
+            refresh();
+        }
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Check if the given feature is enabled for the given user.
+     *
+     * @param feature the feature to check
+     * @param user    the user to check for
+     * @return whether the feature is enabled
+     */
+    public boolean isEnabled(@NonNull Feature feature, @NonNull User user) {
+        return getFlags("user:" + user.getSnowflake(), Map.of("tier", user.getTier().name())).isEnabled(feature);
+    }
+
+    /**
+     * Check if the given feature is enabled for the given organization.
+     *
+     * @param feature the feature to check
+     * @param org     the organization to check for
+     * @return whether the feature is enabled
+     */
+    public boolean isEnabled(@NonNull Feature feature, @NonNull Organization org) {
+        return getFlags("org:" + org.getSnowflake(), Map.of("owner", Long.toString(org.getOwnerSnowflake()))).isEnabled(feature);
+    }
+
+    /**
+     * Get the flags of the given identity.
+     * <p>
+     * If the flags can't be evaluated locally,
+     * the environment flags are used.
+     * </p>
+     *
+     * @param identifier the identifier of the identity
+     * @param traits     the traits to evaluate segments against
+     * @return the flags
+     */
+    @NonNull
+    private FeatureFlags getFlags(@NonNull String identifier, @NonNull Map<String, Object> traits) {
+        if (client == null || !localEvaluation) { // Flagsmith is unavailable, or evaluating would need a network call
+            return FeatureFlags.current();
+        }
+        FeatureFlags flags = identityCache.get(identifier, key -> {
+            try {
+                return toSnapshot(client.getIdentityFlags(key, traits));
+            } catch (Exception ex) {
+                log.warn("Failed to evaluate flags for {}, using the environment flags: {}", key, ex.getMessage());
+                return null;
+            }
+        });
+        return flags == null ? FeatureFlags.current() : flags;
+    }
+
+    /**
+     * Publish the environment flags, and then
+     * schedule the next refresh with jitter.
+     */
+    private void refresh() {
+        try {
+            FeatureFlags flags = toSnapshot(client.getEnvironmentFlags());
+            lastFetched = System.currentTimeMillis();
+            if (FeatureFlags.publish(flags)) {
+                if (identityCache != null) {
+                    identityCache.invalidateAll();
                 }
+                log.info("Fetched new flags: {}", flags);
+            }
+            saveSnapshot(flags, lastFetched);
+        } catch (Exception ex) {
+            refreshFailures.increment();
+            log.warn("Failed to refresh flags: {}", ex.getMessage());
+        } finally {
+            long delay = TimeUnit.SECONDS.toMillis(refreshSeconds) + ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(refreshJitterSeconds) + 1L);
+            if (!scheduler.isShutdown()) {
+                scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Load and publish the persisted flags, if any.
+     *
+     * @return whether the flags were loaded
+     */
+    private boolean loadSnapshot() {
+        if (snapshotFile.isBlank()) {
+            return false;
+        }
+        Path path = Path.of(snapshotFile);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(path.toFile());
+            JsonNode features = root.path("flags");
+            boolean[] enabled = new boolean[Feature.VALUES.length];
+            Object[] values = new Object[Feature.VALUES.length];
+            for (Feature feature : Feature.VALUES) { // Features that weren't persisted stay disabled
+                JsonNode flag = features.path(feature.getId());
+                enabled[feature.ordinal()] = flag.path("enabled").asBoolean(false);
+                values[feature.ordinal()] = objectMapper.treeToValue(flag.path("value"), Object.class);
+            }
+            FeatureFlags flags = new FeatureFlags(enabled, values);
+            lastFetched = root.path("fetched").asLong(0L);
+            FeatureFlags.publish(flags);
+            log.info("Loaded the persisted flags fetched {}s ago: {}", (System.currentTimeMillis() - lastFetched) / 1000L, flags);
+            return true;
+        } catch (IOException ex) {
+            log.warn("Failed to load the persisted flags from {}: {}", path, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Persist the given flags, replacing the
+     * previous ones in a single move.
+     *
+     * @param flags   the flags to persist
+     * @param fetched when the flags were fetched
+     */
+    private void saveSnapshot(@NonNull FeatureFlags flags, long fetched) {
+        if (snapshotFile.isBlank()) {
+            return;
+        }
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("fetched", fetched);
+        ObjectNode features = root.putObject("flags");
+        for (Feature feature : Feature.VALUES) {
+            ObjectNode flag = features.putObject(feature.getId());
+            flag.put("enabled", flags.isEnabled(feature));
+            flag.set("value", objectMapper.valueToTree(flags.getValue(feature)));
+        }
+        Path path = Path.of(snapshotFile).toAbsolutePath();
+        try {
+            Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), root);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException ex) {
+            log.warn("Failed to persist the flags to {}: {}", path, ex.getMessage());
+        }
+    }
+
+    /**
+     * Convert the given Flagsmith flags into a snapshot,
+     * features that aren't returned are disabled.
+     *
+     * @param flags the flags to convert
+     * @return the snapshot
+     */
+    @NonNull
+    private static FeatureFlags toSnapshot(@NonNull Flags flags) {
+        boolean[] enabled = new boolean[Feature.VALUES.length];
+        Object[] values = new Object[Feature.VALUES.length];
+        List<BaseFlag> allFlags = flags.getAllFlags();
+        for (BaseFlag flag : allFlags) {
+            Feature feature = Feature.getById(flag.getFeatureName());
+            if (feature == null) {
+                continue;
             }
-        }, 0L, FETCH_INTERVAL);
+            Object value = flag.getValue();
+            enabled[feature.ordinal()] = flag.getEnabled();
+            values[feature.ordinal()] = value instanceof String stringedValue && (stringedValue.isBlank()) ? null : value;
+        }
+        return new FeatureFlags(enabled, values);
     }
-}
\ No newline at end of file
+}
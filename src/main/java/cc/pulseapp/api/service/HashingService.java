@@ -0,0 +1,338 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.exception.impl.ServiceUnavailableException;
+import cc.pulseapp.api.hash.PasswordHash;
+import cc.pulseapp.api.hash.PasswordHasher;
+import cc.pulseapp.api.model.IGenericResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This service is responsible for running password
+ * hashes on a dedicated, bounded pool of threads.
+ * <p>
+ * Hashing is CPU bound and expensive, so rather than
+ * burning request threads, hashes are queued onto a
+ * pool sized to the number of CPUs. When the queue is
+ * full, new hashes are rejected straight away so a
+ * flood of credential requests only degrades auth
+ * and not the rest of the API.
+ * </p>
+ * <p>
+ * Passwords are stored as self-describing {@link PasswordHash}'s,
+ * new hashes use the configured algorithm and cost, and
+ * hashes using anything else can be upgraded on login.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Hashing")
+public final class HashingService {
+    /**
+     * The number of hashing threads, 0 to use the number of CPUs.
+     */
+    @Value("${hashing.threads:0}")
+    private int threads;
+
+    /**
+     * The max number of hashes that can wait for a thread.
+     */
+    @Value("${hashing.queue-size:64}")
+    private int queueSize;
+
+    /**
+     * The max time (in millis) to wait for a hash to complete.
+     */
+    @Value("${hashing.max-wait-millis:10000}")
+    private long maxWaitMillis;
+
+    /**
+     * The algorithm to hash new passwords with.
+     */
+    @Value("${hashing.algorithm:pbkdf2-sha256}")
+    private String algorithm;
+
+    /**
+     * The cost to hash new passwords with.
+     */
+    @Value("${hashing.cost:512000}")
+    private int cost;
+
+    /**
+     * The registry to publish metrics to.
+     */
+    @NonNull private final MeterRegistry meterRegistry;
+
+    /**
+     * The registered hashers, keyed by their algorithm.
+     */
+    @NonNull private final Map<String, PasswordHasher> hashers = new HashMap<>();
+
+    /**
+     * The executor to run hashes on.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The timer tracking how long hashes wait in the queue.
+     */
+    private Timer queueTimer;
+
+    /**
+     * The timer tracking how long hashes take to compute.
+     */
+    private Timer hashTimer;
+
+    /**
+     * The counter tracking rejected hashes.
+     */
+    private Counter rejectedCounter;
+
+    @Autowired
+    public HashingService(@NonNull MeterRegistry meterRegistry, @NonNull List<PasswordHasher> hashers) {
+        this.meterRegistry = meterRegistry;
+        for (PasswordHasher hasher : hashers) {
+            this.hashers.put(hasher.getAlgorithm(), hasher);
+        }
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        if (!hashers.containsKey(algorithm)) {
+            throw new IllegalStateException("Unknown hashing algorithm: " + algorithm);
+        }
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadId = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "Hashing Thread #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        // Register the metrics
+        queueTimer = Timer.builder("hashing.queue.wait").description("Time hashes spend waiting for a thread").register(meterRegistry);
+        hashTimer = Timer.builder("hashing.duration").description("Time hashes take to compute").register(meterRegistry);
+        rejectedCounter = Counter.builder("hashing.rejected").description("Hashes rejected due to saturation").register(meterRegistry);
+        Gauge.builder("hashing.queue.size", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder("hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        log.info("Hashing with {} (cost {}) on {} threads and a queue size of {}", algorithm, cost, poolSize, queueSize);
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hash the given password with the
+     * configured algorithm and cost.
+     *
+     * @param password the password to hash
+     * @return the encoded hash
+     * @throws ServiceUnavailableException if hashing is saturated
+     */
+    @NonNull
+    public String hashPassword(@NonNull String password) throws ServiceUnavailableException {
+        byte[] salt = HashUtils.generateSalt();
+        PasswordHasher hasher = hashers.get(algorithm);
+        return await(submit(() -> PasswordHash.of(algorithm, cost, salt, hasher.derive(salt, password, cost)).encode()));
+    }
+
+    /**
+     * Verify the given password against a stored hash.
+     *
+     * @param password   the password to verify
+     * @param storedHash the stored hash, encoded or legacy
+     * @param legacySalt the salt of a legacy hash, null if encoded
+     * @return whether the password matches
+     * @throws ServiceUnavailableException if hashing is saturated
+     */
+    public boolean verifyPassword(@NonNull String password, @NonNull String storedHash, String legacySalt) throws ServiceUnavailableException {
+        PasswordHash hash = decodeStored(storedHash, legacySalt);
+        PasswordHasher hasher = getHasher(hash.getAlgorithm());
+        return await(submit(() -> hash.matches(hasher.derive(hash.getSalt(), password, hash.getCost()))));
+    }
+
+    /**
+     * Hash all the given inputs in parallel with the
+     * configured algorithm and cost, and a shared salt.
+     * <p>
+     * Sharing the salt allows checking an input against
+     * all of the hashes with a single derivation, see
+     * {@link #findMatchingHash(String, List, String)}.
+     * </p>
+     *
+     * @param inputs the inputs to hash
+     * @return the encoded hashes, in the same order as the inputs
+     * @throws ServiceUnavailableException if hashing is saturated
+     */
+    @NonNull
+    public List<String> hashAll(@NonNull List<String> inputs) throws ServiceUnavailableException {
+        byte[] salt = HashUtils.generateSalt();
+        PasswordHasher hasher = hashers.get(algorithm);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (String input : inputs) {
+            futures.add(submit(() -> PasswordHash.of(algorithm, cost, salt, hasher.derive(salt, input, cost)).encode()));
+        }
+        List<String> hashes = new ArrayList<>();
+        for (CompletableFuture<String> future : futures) {
+            hashes.add(await(future));
+        }
+        return hashes;
+    }
+
+    /**
+     * Find the stored hash matching the given input.
+     * <p>
+     * The stored hashes are expected to share the same
+     * algorithm, cost, and salt (as produced by {@link #hashAll(List)}),
+     * so the input only has to be derived once.
+     * </p>
+     *
+     * @param input        the input to find
+     * @param storedHashes the stored hashes, encoded or legacy
+     * @param legacySalt   the salt of legacy hashes, null if encoded
+     * @return the matching stored hash, null if none
+     * @throws ServiceUnavailableException if hashing is saturated
+     */
+    public String findMatchingHash(@NonNull String input, @NonNull List<String> storedHashes, String legacySalt) throws ServiceUnavailableException {
+        if (storedHashes.isEmpty()) {
+            return null;
+        }
+        List<PasswordHash> hashes = new ArrayList<>();
+        for (String storedHash : storedHashes) {
+            hashes.add(decodeStored(storedHash, legacySalt));
+        }
+        PasswordHash first = hashes.get(0);
+        PasswordHasher hasher = getHasher(first.getAlgorithm());
+        byte[] digest = await(submit(() -> hasher.derive(first.getSalt(), input, first.getCost())));
+        for (int i = 0; i < hashes.size(); i++) {
+            PasswordHash hash = hashes.get(i);
+            if (hash.getAlgorithm().equals(first.getAlgorithm()) && hash.getCost() == first.getCost()
+                    && Arrays.equals(hash.getSalt(), first.getSalt()) && hash.matches(digest)) {
+                return storedHashes.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the given stored hash should be re-hashed,
+     * either because it's a legacy hash or it doesn't
+     * use the configured algorithm and cost.
+     *
+     * @param storedHash the stored hash
+     * @return whether the hash should be re-hashed
+     */
+    public boolean needsRehash(@NonNull String storedHash) {
+        if (!PasswordHash.isEncoded(storedHash)) {
+            return true;
+        }
+        PasswordHash hash = PasswordHash.decode(storedHash);
+        return !hash.getAlgorithm().equals(algorithm) || hash.getCost() != cost;
+    }
+
+    /**
+     * Submit the given hashing task.
+     *
+     * @param task the task to run
+     * @param <T>  the type of result
+     * @return the future of the result
+     * @throws ServiceUnavailableException if hashing is saturated
+     */
+    @NonNull
+    public <T> CompletableFuture<T> submit(@NonNull Supplier<T> task) throws ServiceUnavailableException {
+        long submitted = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long started = System.nanoTime();
+                queueTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                T result = task.get();
+                hashTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                return result;
+            }, executor);
+        } catch (RejectedExecutionException ex) { // The queue is full
+            rejectedCounter.increment();
+            throw new ServiceUnavailableException(Error.HASHING_SATURATED);
+        }
+    }
+
+    /**
+     * Wait for the given hashing task to complete.
+     *
+     * @param future the future of the task
+     * @param <T>    the type of result
+     * @return the result
+     * @throws ServiceUnavailableException if the task took too long
+     */
+    @NonNull
+    public <T> T await(@NonNull CompletableFuture<T> future) throws ServiceUnavailableException {
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(false);
+            rejectedCounter.increment();
+            throw new ServiceUnavailableException(Error.HASHING_SATURATED);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(Error.HASHING_SATURATED);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * Decode the given stored hash.
+     *
+     * @param storedHash the stored hash, encoded or legacy
+     * @param legacySalt the salt of a legacy hash, null if encoded
+     * @return the decoded hash
+     */
+    @NonNull
+    private PasswordHash decodeStored(@NonNull String storedHash, String legacySalt) {
+        return PasswordHash.isEncoded(storedHash) ? PasswordHash.decode(storedHash)
+                : PasswordHash.legacy(storedHash, legacySalt == null ? "" : legacySalt);
+    }
+
+    /**
+     * Get the hasher for the given algorithm.
+     *
+     * @param algorithm the algorithm
+     * @return the hasher
+     * @throws IllegalStateException if the algorithm is unknown
+     */
+    @NonNull
+    private PasswordHasher getHasher(@NonNull String algorithm) throws IllegalStateException {
+        PasswordHasher hasher = hashers.get(algorithm);
+        if (hasher == null) {
+            throw new IllegalStateException("Unknown hashing algorithm: " + algorithm);
+        }
+        return hasher;
+    }
+
+    /**
+     * Hashing errors.
+     */
+    private enum Error implements IGenericResponse {
+        HASHING_SATURATED
+    }
+}
@@ -0,0 +1,269 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.GenerationGuardedCache;
+import cc.pulseapp.api.model.org.Organization;
+import cc.pulseapp.api.model.org.OrganizationMember;
+import cc.pulseapp.api.model.org.OrganizationMemberPermission;
+import cc.pulseapp.api.repository.OrganizationRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * This service is responsible for maintaining the index
+ * of which {@link Organization}'s each user has access to,
+ * along with their permissions in each.
+ * <p>
+ * The index is kept per user in a Redis hash (org snowflake
+ * to permission bits), built from Mongo on first use and
+ * updated whenever an organization is saved. A local
+ * near-cache sits in front of Redis, and is invalidated
+ * on every node when a user's memberships change.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Memberships")
+public final class MembershipService {
+    private static final String INDEX_KEY_PREFIX = "organizations:memberships:";
+    private static final String VERSION_KEY_PREFIX = "organizations:memberships:version:";
+    private static final String INVALIDATION_CHANNEL = "organizations:memberships:invalidate";
+
+    /**
+     * The field marking an index as built, as
+     * Redis doesn't keep empty hashes around.
+     */
+    private static final String BUILT_MARKER = "0";
+
+    /**
+     * The permissions of an organization owner.
+     */
+    private static final int OWNER_PERMISSIONS = -1;
+
+    /**
+     * How long an index lives in Redis without being rebuilt.
+     */
+    private static final long INDEX_TTL_HOURS = 24L;
+
+    /**
+     * The max attempts to build an index that
+     * keeps racing organizations being saved.
+     */
+    private static final int MAX_BUILD_ATTEMPTS = 3;
+
+    /**
+     * Update a single membership of an index, if the index has been built.
+     * <p>
+     * The version of the index is always bumped, so a build that
+     * read Mongo before this update is never written. An empty
+     * permissions argument removes the membership.
+     * </p>
+     */
+    private static final RedisScript<Long> UPDATE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('incr', KEYS[2])
+            redis.call('expire', KEYS[2], ARGV[3])
+            if redis.call('exists', KEYS[1]) == 0 then
+                return 0
+            end
+            if ARGV[2] == '' then
+                redis.call('hdel', KEYS[1], ARGV[1])
+            else
+                redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * Write a built index, only if its version hasn't changed since
+     * the build started and it wasn't already built by someone else.
+     * <p>
+     * The first arg is the version the build started at, the second
+     * is the ttl (in seconds), and the rest are the fields and values.
+     * Returns 0 if the build raced an update and must be retried.
+     * </p>
+     */
+    private static final RedisScript<Long> BUILD_SCRIPT = new DefaultRedisScript<>("""
+            if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then
+                return 0
+            end
+            if redis.call('exists', KEYS[1]) == 1 then
+                return 1
+            end
+            redis.call('hset', KEYS[1], unpack(ARGV, 3))
+            redis.call('expire', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    /**
+     * The repository to build indexes from.
+     */
+    @NonNull private final OrganizationRepository orgRepository;
+
+    /**
+     * The template to store indexes with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The container to listen for invalidations with.
+     */
+    @NonNull private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * The local near-cache of indexes.
+     * <p>
+     * The key is the user's snowflake and the value is
+     * the org snowflake to permission bits of the user.
+     * </p>
+     */
+    private final GenerationGuardedCache<Long, Map<Long, Integer>> nearCache = new GenerationGuardedCache<>(Caffeine.newBuilder()
+            .maximumSize(10_000L)
+            .expireAfterWrite(1L, TimeUnit.MINUTES)
+            .build());
+
+    @Autowired
+    public MembershipService(@NonNull OrganizationRepository orgRepository, @NonNull StringRedisTemplate redisTemplate,
+                             @NonNull RedisMessageListenerContainer listenerContainer) {
+        this.orgRepository = orgRepository;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        // Evict users whose memberships were changed on any node
+        listenerContainer.addMessageListener((message, pattern) -> {
+            for (String userSnowflake : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+                nearCache.invalidate(Long.parseLong(userSnowflake));
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * Get the memberships of the given user.
+     *
+     * @param userSnowflake the user's snowflake
+     * @return the org snowflake to permission bits of the user
+     */
+    @NonNull
+    public Map<Long, Integer> getMemberships(long userSnowflake) {
+        return nearCache.get(userSnowflake, this::loadMemberships);
+    }
+
+    /**
+     * Check if the given user has a
+     * permission in an organization.
+     *
+     * @param userSnowflake the user's snowflake
+     * @param orgSnowflake  the organization's snowflake
+     * @param permission    the permission to check
+     * @return whether the user has the permission
+     */
+    public boolean hasPermission(long userSnowflake, long orgSnowflake, @NonNull OrganizationMemberPermission permission) {
+        Integer permissions = getMemberships(userSnowflake).get(orgSnowflake);
+        return permissions != null && (permissions & permission.bitwise()) == permission.bitwise();
+    }
+
+    /**
+     * Update the indexes of everyone affected
+     * by an organization being saved.
+     *
+     * @param previous the organization before it was saved, null if new
+     * @param saved    the saved organization
+     */
+    public void onOrganizationSaved(Organization previous, @NonNull Organization saved) {
+        Map<Long, Integer> newMemberships = getMembers(saved);
+        Set<Long> affectedUsers = new HashSet<>(newMemberships.keySet());
+        if (previous != null) {
+            affectedUsers.addAll(getMembers(previous).keySet());
+        }
+        String orgSnowflake = String.valueOf(saved.getSnowflake());
+        for (long userSnowflake : affectedUsers) {
+            Integer permissions = newMemberships.get(userSnowflake);
+            redisTemplate.execute(UPDATE_SCRIPT, List.of(INDEX_KEY_PREFIX + userSnowflake, VERSION_KEY_PREFIX + userSnowflake),
+                    orgSnowflake, permissions == null ? "" : String.valueOf(permissions), String.valueOf(TimeUnit.HOURS.toSeconds(INDEX_TTL_HOURS)));
+            nearCache.invalidate(userSnowflake);
+        }
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, affectedUsers.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(",")));
+        } catch (Exception ex) {
+            log.error("Failed to broadcast membership invalidation", ex);
+        }
+    }
+
+    /**
+     * Load the memberships of the given user from Redis,
+     * building the index from Mongo if it doesn't exist.
+     *
+     * @param userSnowflake the user's snowflake
+     * @return the memberships
+     */
+    @NonNull
+    private Map<Long, Integer> loadMemberships(long userSnowflake) {
+        String key = INDEX_KEY_PREFIX + userSnowflake;
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key);
+        if (!entries.isEmpty()) {
+            Map<Long, Integer> memberships = new HashMap<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (!entry.getKey().equals(BUILT_MARKER)) {
+                    memberships.put(Long.parseLong((String) entry.getKey()), Integer.parseInt((String) entry.getValue()));
+                }
+            }
+            return Collections.unmodifiableMap(memberships);
+        }
+        // Build the index from Mongo, retrying if an org was saved mid-build
+        String versionKey = VERSION_KEY_PREFIX + userSnowflake;
+        Map<Long, Integer> memberships = new HashMap<>();
+        for (int attempt = 0; attempt < MAX_BUILD_ATTEMPTS; attempt++) {
+            String version = redisTemplate.opsForValue().get(versionKey);
+            memberships = new HashMap<>();
+            List<String> args = new ArrayList<>();
+            args.add(version == null ? "0" : version);
+            args.add(String.valueOf(TimeUnit.HOURS.toSeconds(INDEX_TTL_HOURS)));
+            args.add(BUILT_MARKER);
+            args.add(BUILT_MARKER);
+            for (Organization org : orgRepository.findByUserAccess(userSnowflake)) {
+                Integer permissions = getMembers(org).get(userSnowflake);
+                memberships.put(org.getSnowflake(), permissions);
+                args.add(String.valueOf(org.getSnowflake()));
+                args.add(String.valueOf(permissions));
+            }
+            Long written = redisTemplate.execute(BUILD_SCRIPT, List.of(key, versionKey), args.toArray());
+            if (written != null && written == 1L) {
+                break;
+            }
+        }
+        return Collections.unmodifiableMap(memberships);
+    }
+
+    /**
+     * Get the members of the given organization.
+     *
+     * @param org the organization
+     * @return the user snowflake to permission bits of each member, including the owner
+     */
+    @NonNull
+    private static Map<Long, Integer> getMembers(@NonNull Organization org) {
+        Map<Long, Integer> members = new HashMap<>();
+        for (OrganizationMember member : org.getMembers()) {
+            members.put(member.getUserSnowflake(), member.getPermissions());
+        }
+        members.put(org.getOwnerSnowflake(), OWNER_PERMISSIONS);
+        return members;
+    }
+}
@@ -0,0 +1,209 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.metrics.MetricRow;
+import cc.pulseapp.api.metrics.impl.DatastoreMetricRow;
+import cc.pulseapp.api.metrics.impl.RequestMetricRow;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.questdb.client.Sender;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This service is responsible for streaming
+ * metrics to QuestDB over ILP.
+ * <p>
+ * Rows are recorded into a bounded queue and written
+ * in batches by a background thread, so recording never
+ * blocks the caller. When the queue is full (e.g. QuestDB
+ * is down or slow), new rows are dropped and counted.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Metrics")
+public final class MetricsService {
+    /**
+     * Whether metrics are enabled.
+     */
+    @Value("${questdb.enabled:false}") @Getter
+    private boolean enabled;
+
+    /**
+     * The ILP client config string to connect with.
+     */
+    @Value("${questdb.uri:}")
+    private String uri;
+
+    /**
+     * The max number of rows waiting to be written.
+     */
+    @Value("${questdb.buffer-size:8192}")
+    private int bufferSize;
+
+    /**
+     * The max number of rows to write per batch.
+     */
+    @Value("${questdb.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * The time (in millis) to wait for rows when idle.
+     */
+    @Value("${questdb.flush-interval-millis:1000}")
+    private long flushIntervalMillis;
+
+    /**
+     * The registry to publish metrics to.
+     */
+    @NonNull private final MeterRegistry meterRegistry;
+
+    /**
+     * The queue of rows waiting to be written.
+     */
+    private BlockingQueue<MetricRow> queue;
+
+    /**
+     * The counter tracking dropped rows.
+     */
+    private Counter droppedCounter;
+
+    /**
+     * The thread writing rows to QuestDB.
+     */
+    private Thread writer;
+
+    /**
+     * Whether the writer is running.
+     */
+    private volatile boolean running;
+
+    @Autowired
+    public MetricsService(@NonNull MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(bufferSize);
+        droppedCounter = Counter.builder("questdb.dropped").description("Metric rows dropped because the buffer was full").register(meterRegistry);
+        running = true;
+        writer = new Thread(this::runWriter, "QuestDB Metrics Writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Streaming metrics to QuestDB");
+    }
+
+    @PreDestroy
+    public void onShutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5L));
+    }
+
+    /**
+     * Record the metrics of an HTTP request.
+     *
+     * @param timestamp     the time (in millis) the request was received
+     * @param endpoint      the endpoint pattern that handled the request
+     * @param method        the request method
+     * @param auth          the outcome of authenticating the request
+     * @param status        the response status
+     * @param latencyMicros the time (in micros) taken to respond
+     */
+    public void recordRequest(long timestamp, @NonNull String endpoint, @NonNull String method, @NonNull String auth, int status, long latencyMicros) {
+        record(new RequestMetricRow(timestamp, endpoint, method, auth, status, latencyMicros));
+    }
+
+    /**
+     * Record the metrics of a datastore operation.
+     *
+     * @param store         the store the operation ran against
+     * @param operation     the name of the operation
+     * @param success       whether the operation succeeded
+     * @param latencyMicros the time (in micros) the operation took
+     */
+    public void recordDatastoreOperation(@NonNull String store, @NonNull String operation, boolean success, long latencyMicros) {
+        record(new DatastoreMetricRow(System.currentTimeMillis(), store, operation, success, latencyMicros));
+    }
+
+    /**
+     * Queue the given row to be written.
+     *
+     * @param row the row to write
+     */
+    private void record(@NonNull MetricRow row) {
+        if (enabled && !queue.offer(row)) { // Full, drop the row
+            droppedCounter.increment();
+        }
+    }
+
+    /**
+     * Write rows from the queue until
+     * stopped, and then write what's left.
+     */
+    private void runWriter() {
+        List<MetricRow> batch = new ArrayList<>(batchSize);
+        Sender sender = null;
+        while (running || !queue.isEmpty()) {
+            try {
+                MetricRow first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                if (sender == null) {
+                    sender = Sender.fromConfig(uri);
+                }
+                for (MetricRow row : batch) {
+                    row.write(sender);
+                }
+                sender.flush();
+            } catch (InterruptedException ex) {
+                running = false; // Shutting down, write what's left
+            } catch (Exception ex) {
+                log.warn("Failed to write {} metric row(s) to QuestDB: {}", batch.size(), ex.getMessage());
+                sender = closeQuietly(sender); // Reconnect on the next batch
+            } finally {
+                batch.clear();
+            }
+        }
+        closeQuietly(sender);
+    }
+
+    /**
+     * Close the given sender, ignoring any errors.
+     *
+     * @param sender the sender to close
+     * @return null
+     */
+    private static Sender closeQuietly(Sender sender) {
+        if (sender != null) {
+            try {
+                sender.close();
+            } catch (Exception ignored) {
+                // Nothing we can do
+            }
+        }
+        return null;
+    }
+}
@@ -1,11 +1,13 @@
 package cc.pulseapp.api.service;
 
 import cc.pulseapp.api.common.EnvironmentUtils;
+import cc.pulseapp.api.common.HashUtils;
 import cc.pulseapp.api.exception.impl.BadRequestException;
 import cc.pulseapp.api.model.Feature;
 import cc.pulseapp.api.model.IGenericResponse;
 import cc.pulseapp.api.model.org.DetailedOrganization;
 import cc.pulseapp.api.model.org.Organization;
+import cc.pulseapp.api.model.page.StatusPage;
 import cc.pulseapp.api.model.user.User;
 import cc.pulseapp.api.model.user.UserFlag;
 import cc.pulseapp.api.repository.OrganizationRepository;
@@ -15,9 +17,7 @@ import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author Braydon
@@ -34,6 +34,11 @@ public final class OrganizationService {
      */
     @NonNull private final SnowflakeService snowflakeService;
 
+    /**
+     * The service to use for looking up memberships.
+     */
+    @NonNull private final MembershipService membershipService;
+
     /**
      * The repository to store and retrieve organizations.
      */
@@ -44,13 +49,28 @@ public final class OrganizationService {
      */
     @Nonnull private final StatusPageRepository statusPageRepository;
 
+    /**
+     * The service to check feature flags with.
+     */
+    @NonNull private final FlagsService flagsService;
+
+    /**
+     * The service to track organization versions with.
+     */
+    @NonNull private final OrganizationVersionService versionService;
+
     @Autowired
     public OrganizationService(@NonNull AuthService authService, @NonNull SnowflakeService snowflakeService,
-                               @NonNull OrganizationRepository orgRepository, @Nonnull StatusPageRepository statusPageRepository) {
+                               @NonNull MembershipService membershipService, @NonNull OrganizationRepository orgRepository,
+                               @Nonnull StatusPageRepository statusPageRepository, @NonNull FlagsService flagsService,
+                               @NonNull OrganizationVersionService versionService) {
         this.authService = authService;
         this.snowflakeService = snowflakeService;
+        this.membershipService = membershipService;
         this.orgRepository = orgRepository;
         this.statusPageRepository = statusPageRepository;
+        this.flagsService = flagsService;
+        this.versionService = versionService;
     }
 
     /**
@@ -65,7 +85,7 @@ public final class OrganizationService {
     @NonNull
     public Organization createOrganization(@Nonnull String name, @Nonnull String slug, @NonNull User owner) throws BadRequestException {
         // Ensure org creation is enabled
-        if (!Feature.ORG_CREATION_ENABLED.isEnabled()) {
+        if (!flagsService.isEnabled(Feature.ORG_CREATION_ENABLED, owner)) {
             throw new BadRequestException(Error.ORG_CREATION_DISABLED);
         }
         // Ensure the org slug isn't taken
@@ -79,7 +99,24 @@ public final class OrganizationService {
             }
         }
         // Create the org and return it
-        return orgRepository.save(new Organization(snowflakeService.generateSnowflake(), name, slug, null, Collections.emptyList(), owner.getSnowflake()));
+        return saveOrganization(new Organization(snowflakeService.generateSnowflake(), name, slug, null, Collections.emptyList(), owner.getSnowflake()));
+    }
+
+    /**
+     * Save the given organization, keeping the
+     * membership index of its members up-to-date.
+     *
+     * @param org the org to save
+     * @return the saved org
+     */
+    @NonNull
+    public Organization saveOrganization(@NonNull Organization org) {
+        versionService.bump(org.getSnowflake()); // Aborts the save if the version can't be bumped
+        Organization previous = orgRepository.findById(org.getSnowflake()).orElse(null);
+        Organization saved = orgRepository.save(org);
+        membershipService.onOrganizationSaved(previous, saved);
+        versionService.bumpAfterSave(saved.getSnowflake());
+        return saved;
     }
 
     /**
@@ -91,13 +128,49 @@ public final class OrganizationService {
     @NonNull
     public List<DetailedOrganization> getOrganizations() {
         User user = authService.getAuthenticatedUser();
+        Set<Long> orgSnowflakes = membershipService.getMemberships(user.getSnowflake()).keySet();
         List<DetailedOrganization> organizations = new ArrayList<>();
-        for (Organization org : orgRepository.findByUserAccess(user.getSnowflake())) {
-            organizations.add(new DetailedOrganization(org, statusPageRepository.findByOrgSnowflake(org.getSnowflake())));
+        if (orgSnowflakes.isEmpty()) {
+            return organizations;
+        }
+        List<Organization> orgs = orgRepository.findAllById(orgSnowflakes);
+        // Fetch the status pages for all the orgs at once, and group them by org
+        Map<Long, List<StatusPage>> statusPages = new HashMap<>();
+        for (StatusPage statusPage : statusPageRepository.findByOrgSnowflakeIn(orgSnowflakes)) {
+            statusPages.computeIfAbsent(statusPage.getOrgSnowflake(), orgSnowflake -> new ArrayList<>()).add(statusPage);
+        }
+        for (Organization org : orgs) {
+            organizations.add(new DetailedOrganization(org, statusPages.getOrDefault(org.getSnowflake(), Collections.emptyList())));
         }
         return organizations;
     }
 
+    /**
+     * Get the entity tag of the organizations
+     * of the currently authenticated user.
+     * <p>
+     * The tag is derived from the user's memberships and
+     * the version of each organization, so it's computed
+     * without reading the organizations from Mongo.
+     * </p>
+     *
+     * @return the strong entity tag, null if unavailable
+     */
+    public String getOrganizationsETag() {
+        User user = authService.getAuthenticatedUser();
+        Map<Long, Integer> memberships = new TreeMap<>(membershipService.getMemberships(user.getSnowflake()));
+        long[] versions = versionService.getVersions(new ArrayList<>(memberships.keySet()));
+        if (versions == null) {
+            return null;
+        }
+        StringBuilder state = new StringBuilder().append(user.getSnowflake());
+        int index = 0;
+        for (Map.Entry<Long, Integer> membership : memberships.entrySet()) {
+            state.append('|').append(membership.getKey()).append(':').append(membership.getValue()).append(':').append(versions[index++]);
+        }
+        return "\"" + HashUtils.digest(state.toString()) + "\"";
+    }
+
     /**
      * Organization errors.
      */
@@ -0,0 +1,126 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.model.org.Organization;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This service is responsible for tracking the version
+ * of each {@link Organization}, bumped every time the
+ * organization (or one of its status pages) is saved.
+ * <p>
+ * Versions live in Redis so every node sees them without
+ * reading the organization from Mongo. A version never goes
+ * backwards, even if its key is lost, as a bump always moves
+ * it to at least the current time.
+ * </p>
+ * <p>
+ * Writers bump before saving, so if Redis is unavailable
+ * the save is aborted with nothing persisted, and then try
+ * to bump again after saving, so a poll between the two
+ * bumps can't tie the old data to the new version.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Organization Versions")
+public final class OrganizationVersionService {
+    private static final String KEY_PREFIX = "organizations:version:";
+
+    /**
+     * Bump a version to the greater of its next
+     * value and the current time (in millis).
+     */
+    private static final RedisScript<Long> BUMP_SCRIPT = new DefaultRedisScript<>("""
+            local version = tonumber(redis.call('get', KEYS[1]) or '0') + 1
+            local now = tonumber(ARGV[1])
+            if now > version then
+                version = now
+            end
+            redis.call('set', KEYS[1], version)
+            return version
+            """, Long.class);
+
+    /**
+     * The template to store versions with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    @Autowired
+    public OrganizationVersionService(@NonNull StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Bump the version of the given organization,
+     * before the organization is saved.
+     * <p>
+     * A failure isn't swallowed, as clients would keep
+     * being told their stale copy is up-to-date.
+     * </p>
+     *
+     * @param orgSnowflake the snowflake of the org
+     */
+    public void bump(long orgSnowflake) {
+        redisTemplate.execute(BUMP_SCRIPT, Collections.singletonList(KEY_PREFIX + orgSnowflake), Long.toString(System.currentTimeMillis()));
+    }
+
+    /**
+     * Bump the version of the given organization
+     * again, after the organization was saved.
+     * <p>
+     * The save already happened, so a failure is
+     * only logged rather than failing the request.
+     * </p>
+     *
+     * @param orgSnowflake the snowflake of the org
+     */
+    public void bumpAfterSave(long orgSnowflake) {
+        try {
+            bump(orgSnowflake);
+        } catch (Exception ex) {
+            log.warn("Failed to bump the version of organization {} after saving: {}", orgSnowflake, ex.getMessage());
+        }
+    }
+
+    /**
+     * Get the versions of the given organizations.
+     *
+     * @param orgSnowflakes the snowflakes of the orgs
+     * @return the versions in the same order (0 if never bumped), null if unavailable
+     */
+    public long[] getVersions(@NonNull List<Long> orgSnowflakes) {
+        if (orgSnowflakes.isEmpty()) {
+            return new long[0];
+        }
+        List<String> keys = new ArrayList<>(orgSnowflakes.size());
+        for (long orgSnowflake : orgSnowflakes) {
+            keys.add(KEY_PREFIX + orgSnowflake);
+        }
+        List<String> values;
+        try {
+            values = redisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception ex) {
+            log.warn("Failed to get organization versions: {}", ex.getMessage());
+            return null;
+        }
+        if (values == null) {
+            return null;
+        }
+        long[] versions = new long[orgSnowflakes.size()];
+        for (int i = 0; i < versions.length; i++) {
+            String value = values.get(i);
+            versions[i] = value == null ? 0L : Long.parseLong(value);
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,249 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.RequestUtils;
+import cc.pulseapp.api.common.StringUtils;
+import cc.pulseapp.api.common.TokenBucket;
+import cc.pulseapp.api.exception.impl.TooManyRequestsException;
+import cc.pulseapp.api.model.IGenericResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This service is responsible for rate limiting
+ * attempts against the credential endpoints.
+ * <p>
+ * Attempts are limited per IP, per email, and globally
+ * with a sliding window counter in Redis (the count of
+ * the current window, plus the count of the previous
+ * window weighted by how much of it is still in the
+ * sliding window), checked and counted atomically by a
+ * single script. In front of Redis, every node keeps a
+ * local token bucket per action and IP, so a single client
+ * hammering a node is rejected without a round trip.
+ * </p>
+ * <p>
+ * If Redis is unavailable, attempts are only limited
+ * by the local token buckets.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Rate Limit")
+public final class RateLimitService {
+    private static final String KEY_PREFIX = "rate-limit:";
+
+    /**
+     * Check every limit, and only count the attempt if none are exceeded.
+     * <p>
+     * The keys are pairs of the current and previous window of each
+     * limit. The first arg is the weight of the previous window, the
+     * second is the ttl (in millis) of a window, and the rest are the
+     * limits. Returns 0 if allowed, otherwise the (1-based) index of
+     * the exceeded limit.
+     * </p>
+     */
+    private static final RedisScript<Long> CHECK_SCRIPT = new DefaultRedisScript<>("""
+            local weight = tonumber(ARGV[1])
+            for i = 1, #KEYS, 2 do
+                local current = tonumber(redis.call('get', KEYS[i]) or '0')
+                local previous = tonumber(redis.call('get', KEYS[i + 1]) or '0')
+                local limit = (i + 1) / 2
+                if current + previous * weight >= tonumber(ARGV[2 + limit]) then
+                    return limit
+                end
+            end
+            for i = 1, #KEYS, 2 do
+                redis.call('incr', KEYS[i])
+                redis.call('pexpire', KEYS[i], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    private static final String[] SCOPES = { "ip", "email", "global" };
+
+    /**
+     * Whether rate limiting is enabled.
+     */
+    @Value("${rate-limit.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * The length (in seconds) of the sliding window.
+     */
+    @Value("${rate-limit.window-seconds:60}")
+    private long windowSeconds;
+
+    /**
+     * The max attempts per IP per window.
+     */
+    @Value("${rate-limit.ip-limit:30}")
+    private int ipLimit;
+
+    /**
+     * The max attempts per email per window.
+     */
+    @Value("${rate-limit.email-limit:10}")
+    private int emailLimit;
+
+    /**
+     * The max attempts across every client per window.
+     */
+    @Value("${rate-limit.global-limit:3000}")
+    private int globalLimit;
+
+    /**
+     * The max number of action and IP pairs to keep local token buckets for.
+     */
+    @Value("${rate-limit.local-buckets:100000}")
+    private long localBuckets;
+
+    /**
+     * The template to count attempts with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The registry to publish metrics to.
+     */
+    @NonNull private final MeterRegistry meterRegistry;
+
+    /**
+     * The local token bucket of each action and IP.
+     */
+    private Cache<String, TokenBucket> buckets;
+
+    /**
+     * The counters tracking rejected attempts
+     * by the scope of the exceeded limit.
+     */
+    private final Counter[] rejectedCounters = new Counter[SCOPES.length + 1];
+
+    @Autowired
+    public RateLimitService(@NonNull StringRedisTemplate redisTemplate, @NonNull MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        if (!enabled) {
+            log.info("Rate limiting is disabled");
+            return;
+        }
+        buckets = Caffeine.newBuilder()
+                .maximumSize(localBuckets)
+                .expireAfterAccess(windowSeconds, TimeUnit.SECONDS)
+                .build();
+        for (int i = 0; i < SCOPES.length; i++) {
+            rejectedCounters[i] = rejectedCounter(SCOPES[i]);
+        }
+        rejectedCounters[SCOPES.length] = rejectedCounter("local");
+    }
+
+    /**
+     * Check an attempt against a credential endpoint,
+     * counting it if no limits are exceeded.
+     *
+     * @param action  the action being attempted (e.g. "login")
+     * @param request the http request
+     * @param email   the email the attempt is for, null if none
+     * @throws TooManyRequestsException if a limit is exceeded
+     */
+    public void checkAttempt(@NonNull String action, @NonNull HttpServletRequest request, String email) throws TooManyRequestsException {
+        if (!enabled) {
+            return;
+        }
+        String ip = RequestUtils.getRealIp(request);
+        if (!buckets.get(action + ":" + ip, key -> new TokenBucket(ipLimit, TimeUnit.SECONDS.toMillis(windowSeconds))).tryAcquire()) {
+            rejectedCounters[SCOPES.length].increment();
+            throw new TooManyRequestsException(Error.TOO_MANY_ATTEMPTS);
+        }
+
+        long windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        long now = System.currentTimeMillis();
+        long window = now / windowMillis;
+        double previousWeight = 1D - (double) (now % windowMillis) / windowMillis;
+
+        List<String> keys = new ArrayList<>(6);
+        List<String> limits = new ArrayList<>(3);
+        addLimit(keys, limits, action + ":ip:" + ip, window, ipLimit);
+        if (email != null) {
+            addLimit(keys, limits, action + ":email:" + StringUtils.normalize(email), window, emailLimit);
+        }
+        addLimit(keys, limits, action + ":global", window, globalLimit);
+
+        Object[] args = new Object[2 + limits.size()];
+        args[0] = Double.toString(previousWeight);
+        args[1] = Long.toString(windowMillis * 2L);
+        for (int i = 0; i < limits.size(); i++) {
+            args[2 + i] = limits.get(i);
+        }
+        Long exceeded;
+        try {
+            exceeded = redisTemplate.execute(CHECK_SCRIPT, keys, args);
+        } catch (Exception ex) {
+            log.warn("Failed to check rate limits, only limiting locally: {}", ex.getMessage());
+            return;
+        }
+        if (exceeded != null && exceeded > 0L) {
+            int scope = exceeded.intValue() - 1;
+            if (email == null && scope > 0) { // No email limit, so the global limit shifted down
+                scope++;
+            }
+            rejectedCounters[scope].increment();
+            throw new TooManyRequestsException(Error.TOO_MANY_ATTEMPTS);
+        }
+    }
+
+    /**
+     * Add the window keys and the limit of a limit.
+     *
+     * @param keys   the keys to add to
+     * @param limits the limits to add to
+     * @param name   the name of the limit
+     * @param window the index of the current window
+     * @param limit  the limit
+     */
+    private static void addLimit(@NonNull List<String> keys, @NonNull List<String> limits, @NonNull String name, long window, int limit) {
+        keys.add(KEY_PREFIX + name + ":" + window);
+        keys.add(KEY_PREFIX + name + ":" + (window - 1L));
+        limits.add(Integer.toString(limit));
+    }
+
+    /**
+     * Register the counter tracking rejected attempts of a scope.
+     *
+     * @param scope the scope of the exceeded limit
+     * @return the counter
+     */
+    @NonNull
+    private Counter rejectedCounter(@NonNull String scope) {
+        return Counter.builder("rate_limit.rejected")
+                .description("Credential attempts rejected by a rate limit")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Rate limit errors.
+     */
+    private enum Error implements IGenericResponse {
+        TOO_MANY_ATTEMPTS
+    }
+}
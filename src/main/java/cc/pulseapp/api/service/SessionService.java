@@ -0,0 +1,236 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.GenerationGuardedCache;
+import cc.pulseapp.api.common.HashUtils;
+import cc.pulseapp.api.model.user.session.Session;
+import cc.pulseapp.api.repository.SessionRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This service is responsible for resolving
+ * and invalidating {@link Session}'s.
+ * <p>
+ * Sessions resolved by a long-lived access token are
+ * kept in a bounded local cache (keyed by the digest of
+ * the access token) in front of Redis, entries expire
+ * with the session itself or after {@link #MAX_LOCAL_TTL},
+ * whichever comes first. Deleted sessions are broadcast
+ * to every node so they are evicted from all local caches,
+ * and their signed access tokens are revoked.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "Sessions")
+public final class SessionService {
+    /**
+     * The pub/sub channel to broadcast invalidated sessions on.
+     */
+    private static final String INVALIDATION_CHANNEL = "sessions:invalidate";
+
+    /**
+     * The maximum amount of time (in nanos) a session can
+     * be served from the local cache before re-checking Redis.
+     */
+    private static final long MAX_LOCAL_TTL = TimeUnit.MINUTES.toNanos(5L);
+
+    /**
+     * The repository to retrieve sessions from.
+     */
+    @NonNull private final SessionRepository sessionRepository;
+
+    /**
+     * The service to revoke access tokens with.
+     */
+    @NonNull private final AccessTokenService accessTokenService;
+
+    /**
+     * The template to publish invalidations with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The container to listen for invalidations with.
+     */
+    @NonNull private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * The local cache of resolved sessions.
+     * <p>
+     * The key is the digest of the access
+     * token and the value is the session.
+     * </p>
+     */
+    private final GenerationGuardedCache<String, Session> cache = new GenerationGuardedCache<>(Caffeine.newBuilder()
+            .maximumSize(25_000L)
+            .expireAfter(new Expiry<String, Session>() {
+                @Override
+                public long expireAfterCreate(@NonNull String key, @NonNull Session session, long currentTime) {
+                    long untilExpiry = TimeUnit.MILLISECONDS.toNanos(session.getExpires() - System.currentTimeMillis());
+                    return Math.max(0L, Math.min(untilExpiry, MAX_LOCAL_TTL));
+                }
+
+                @Override
+                public long expireAfterUpdate(@NonNull String key, @NonNull Session session, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, session, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(@NonNull String key, @NonNull Session session, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build());
+
+    @Autowired
+    public SessionService(@NonNull SessionRepository sessionRepository, @NonNull AccessTokenService accessTokenService,
+                          @NonNull StringRedisTemplate redisTemplate, @NonNull RedisMessageListenerContainer listenerContainer) {
+        this.sessionRepository = sessionRepository;
+        this.accessTokenService = accessTokenService;
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        // Evict sessions that were invalidated on any node
+        listenerContainer.addMessageListener((message, pattern) -> {
+            for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split(",")) {
+                cache.invalidate(key);
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * Get a session by its long-lived access token.
+     * <p>
+     * These were issued before access tokens were signed,
+     * and are only accepted until the session is refreshed.
+     * </p>
+     *
+     * @param accessToken the access token
+     * @return the session, null if none or expired
+     */
+    public Session getSessionByAccessToken(@NonNull String accessToken) {
+        String key = HashUtils.digest(accessToken);
+        Session session = cache.get(key, digest -> sessionRepository.findByAccessToken(accessToken));
+        if (session != null && session.getExpires() <= System.currentTimeMillis()) { // Session has expired
+            cache.invalidate(key);
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Get all sessions for a user.
+     *
+     * @param userSnowflake the user's snowflake
+     * @return the sessions
+     */
+    @NonNull
+    public List<Session> getSessions(long userSnowflake) {
+        return sessionRepository.findAllByUserSnowflake(userSnowflake);
+    }
+
+    /**
+     * Get a session by its snowflake.
+     *
+     * @param snowflake the snowflake of the session
+     * @return the session, null if none or expired
+     */
+    public Session getSession(long snowflake) {
+        Session session = sessionRepository.findBySnowflake(snowflake);
+        return session == null || session.getExpires() <= System.currentTimeMillis() ? null : session;
+    }
+
+    /**
+     * Rotate the refresh token of the given session, as long
+     * as no one else rotated it since it was read.
+     *
+     * @param current the session as it was read
+     * @param rotated the rotated session
+     * @return whether the session was rotated
+     */
+    public boolean rotateSession(@NonNull Session current, @NonNull Session rotated) {
+        if (!sessionRepository.rotate(current, rotated)) {
+            return false;
+        }
+        evict(List.of(current)); // The long-lived access token (if any) was retired
+        return true;
+    }
+
+    /**
+     * Delete the session with the given snowflake.
+     *
+     * @param snowflake the snowflake of the session
+     */
+    public void deleteSession(long snowflake) {
+        Session session = sessionRepository.findBySnowflake(snowflake);
+        if (session == null) { // Already gone, make sure its access tokens are too
+            accessTokenService.revoke(List.of(snowflake));
+            return;
+        }
+        deleteSessions(List.of(session));
+    }
+
+    /**
+     * Delete the given sessions, evict them from the cache
+     * of every node, and revoke their access tokens.
+     *
+     * @param sessions the sessions to delete
+     */
+    public void deleteSessions(@NonNull Collection<Session> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        sessionRepository.deleteAll(sessions);
+        List<Long> snowflakes = new ArrayList<>();
+        for (Session session : sessions) {
+            snowflakes.add(session.getSnowflake());
+        }
+        accessTokenService.revoke(snowflakes);
+        evict(sessions);
+    }
+
+    /**
+     * Evict the given sessions from the local
+     * cache, and then from every other node.
+     *
+     * @param sessions the sessions to evict
+     */
+    private void evict(@NonNull Collection<Session> sessions) {
+        List<String> keys = new ArrayList<>();
+        for (Session session : sessions) {
+            if (session.getAccessTokenDigest() == null) { // Never cached
+                continue;
+            }
+            String key = HexFormat.of().formatHex(session.getAccessTokenDigest());
+            cache.invalidate(key);
+            keys.add(key);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, String.join(",", keys));
+        } catch (Exception ex) {
+            log.error("Failed to broadcast session invalidation", ex);
+        }
+    }
+}
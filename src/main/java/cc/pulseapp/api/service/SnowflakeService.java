@@ -1,25 +1,163 @@
 package cc.pulseapp.api.service;
 
+import cc.pulseapp.api.common.SnowflakeGenerator;
+import cc.pulseapp.api.exception.impl.ServiceUnavailableException;
+import cc.pulseapp.api.model.IGenericResponse;
 import com.relops.snowflake.Snowflake;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The service responsible for generating snowflakes!
+ * <p>
+ * Every replica needs its own node to avoid generating
+ * duplicate snowflakes, so a node is leased from Redis
+ * on startup and kept alive with a heartbeat. If leasing
+ * is disabled or Redis is unavailable at startup, the
+ * statically configured node is used instead, which is
+ * never leased out.
+ * </p>
+ * <p>
+ * Once a node is leased, snowflakes are only generated
+ * while the lease is known to be held, if it hasn't been
+ * confirmed within its ttl another instance may have
+ * taken the node, so generation fails until it is.
+ * </p>
  *
  * @author Braydon
  */
-@Service
+@Service @Log4j2(topic = "Snowflake")
 public final class SnowflakeService {
     private static final long TIMESTAMP_SHIFT = Snowflake.NODE_SHIFT + Snowflake.SEQ_SHIFT;
+    private static final String LEASE_KEY_PREFIX = "snowflake:node:";
+
+    /**
+     * Extend the lease of a node, if we still own it.
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('pexpire', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * Release the lease of a node, if we still own it.
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[1]) == ARGV[1] then
+                return redis.call('del', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * The node to use when not leasing one.
+     */
+    @Value("${snowflake.node:7}")
+    private int staticNode;
+
+    /**
+     * Whether nodes should be leased from Redis.
+     */
+    @Value("${snowflake.lease.enabled:true}")
+    private boolean leaseEnabled;
+
+    /**
+     * How long (in millis) a node lease lasts without a heartbeat.
+     */
+    @Value("${snowflake.lease.ttl-millis:30000}")
+    private long leaseTtlMillis;
+
+    /**
+     * The template to lease nodes with.
+     */
+    @NonNull private final StringRedisTemplate redisTemplate;
+
+    /**
+     * The id of this instance, stored as the owner of leases.
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * The scheduler to send lease heartbeats on.
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Snowflake Lease Heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The generator to use.
+     */
+    private SnowflakeGenerator generator;
+
+    /**
+     * Whether the current node is leased.
+     */
+    private volatile boolean leased;
 
     /**
-     * The snowflake instance to use.
+     * Whether generation is fenced by a lease, true once
+     * a node has been leased, even if it's since lost.
      */
-    @NonNull private final Snowflake snowflake;
+    private volatile boolean fenced;
 
-    private SnowflakeService() {
-        snowflake = new Snowflake(7);
+    /**
+     * The {@link System#nanoTime()} of when the lease was last
+     * confirmed, taken before the command was sent so the lease
+     * never outlives it.
+     */
+    private volatile long leaseConfirmedNanos;
+
+    @Autowired
+    public SnowflakeService(@NonNull StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void onInitialize() {
+        generator = new SnowflakeGenerator(staticNode);
+        if (!leaseEnabled) {
+            log.info("Using static snowflake node {}", staticNode);
+            return;
+        }
+        try {
+            acquireLease();
+        } catch (Exception ex) {
+            log.warn("Failed to lease a snowflake node, falling back to static node {}", staticNode, ex);
+        }
+        long interval = leaseTtlMillis / 3L;
+        scheduler.scheduleAtFixedRate(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void onShutdown() {
+        scheduler.shutdownNow();
+        if (leased) { // Free up our node for other instances
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, List.of(LEASE_KEY_PREFIX + generator.getNode()), instanceId);
+            } catch (Exception ex) {
+                log.warn("Failed to release snowflake node {}", generator.getNode(), ex);
+            }
+        }
     }
 
     /**
@@ -28,7 +166,19 @@ public final class SnowflakeService {
      * @return the generated snowflake
      */
     public long generateSnowflake() {
-        return snowflake.next();
+        ensureLease();
+        return generator.next();
+    }
+
+    /**
+     * Generate a batch of new snowflakes.
+     *
+     * @param count the number of snowflakes to generate
+     * @return the generated snowflakes, in ascending order
+     */
+    public long[] generateSnowflakes(int count) {
+        ensureLease();
+        return generator.next(count);
     }
 
     /**
@@ -45,4 +195,74 @@ public final class SnowflakeService {
     public long extractCreationTime(long snowflake) {
         return snowflake >>> TIMESTAMP_SHIFT;
     }
-}
\ No newline at end of file
+
+    /**
+     * Ensure the node we're generating on is
+     * still leased, if generation is fenced.
+     *
+     * @throws ServiceUnavailableException if the lease hasn't been confirmed within its ttl
+     */
+    private void ensureLease() throws ServiceUnavailableException {
+        if (fenced && (!leased || System.nanoTime() - leaseConfirmedNanos >= TimeUnit.MILLISECONDS.toNanos(leaseTtlMillis))) {
+            throw new ServiceUnavailableException(Error.SNOWFLAKE_NODE_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * Lease a free node from Redis, starting the search
+     * from a random node and skipping the static node.
+     *
+     * @throws IllegalStateException if every node is leased
+     */
+    private void acquireLease() throws IllegalStateException {
+        int nodes = SnowflakeGenerator.MAX_NODE + 1;
+        int start = ThreadLocalRandom.current().nextInt(nodes);
+        for (int i = 0; i < nodes; i++) {
+            int node = (start + i) % nodes;
+            if (node == staticNode) { // Reserved for instances that couldn't lease
+                continue;
+            }
+            long sent = System.nanoTime();
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LEASE_KEY_PREFIX + node, instanceId, Duration.ofMillis(leaseTtlMillis));
+            if (Boolean.TRUE.equals(acquired)) {
+                generator.setNode(node);
+                leaseConfirmedNanos = sent;
+                leased = true;
+                fenced = true;
+                log.info("Leased snowflake node {}", node);
+                return;
+            }
+        }
+        throw new IllegalStateException("Every snowflake node is leased");
+    }
+
+    /**
+     * Renew our lease, acquiring a new
+     * one if it was lost (or never acquired).
+     */
+    private void heartbeat() {
+        try {
+            if (leased) {
+                long sent = System.nanoTime();
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(LEASE_KEY_PREFIX + generator.getNode()),
+                        instanceId, String.valueOf(leaseTtlMillis));
+                if (renewed != null && renewed == 1L) {
+                    leaseConfirmedNanos = sent;
+                    return;
+                }
+                leased = false;
+                log.warn("Lost the lease for snowflake node {}, leasing a new one", generator.getNode());
+            }
+            acquireLease();
+        } catch (Exception ex) {
+            log.warn("Failed to renew the snowflake node lease", ex);
+        }
+    }
+
+    /**
+     * Snowflake errors.
+     */
+    private enum Error implements IGenericResponse {
+        SNOWFLAKE_NODE_UNAVAILABLE
+    }
+}
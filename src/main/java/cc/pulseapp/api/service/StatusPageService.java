@@ -1,6 +1,7 @@
 package cc.pulseapp.api.service;
 
 import cc.pulseapp.api.common.EnvironmentUtils;
+import cc.pulseapp.api.common.StringUtils;
 import cc.pulseapp.api.exception.impl.BadRequestException;
 import cc.pulseapp.api.model.Feature;
 import cc.pulseapp.api.model.IGenericResponse;
@@ -30,10 +31,23 @@ public final class StatusPageService {
      */
     @NonNull private final StatusPageRepository pageRepository;
 
+    /**
+     * The service to check feature flags with.
+     */
+    @NonNull private final FlagsService flagsService;
+
+    /**
+     * The service to track organization versions with.
+     */
+    @NonNull private final OrganizationVersionService versionService;
+
     @Autowired
-    public StatusPageService(@NonNull SnowflakeService snowflakeService, @NonNull StatusPageRepository pageRepository) {
+    public StatusPageService(@NonNull SnowflakeService snowflakeService, @NonNull StatusPageRepository pageRepository,
+                             @NonNull FlagsService flagsService, @NonNull OrganizationVersionService versionService) {
         this.snowflakeService = snowflakeService;
         this.pageRepository = pageRepository;
+        this.flagsService = flagsService;
+        this.versionService = versionService;
     }
 
     /**
@@ -47,11 +61,11 @@ public final class StatusPageService {
     @NonNull
     public StatusPage createStatusPage(@Nonnull String name, @NonNull Organization owner) throws BadRequestException {
         // Ensure status page creation is enabled
-        if (!Feature.STATUS_PAGE_CREATION_ENABLED.isEnabled()) {
+        if (!flagsService.isEnabled(Feature.STATUS_PAGE_CREATION_ENABLED, owner)) {
             throw new BadRequestException(Error.STATUS_PAGE_CREATION_DISABLED);
         }
         // Ensure the status page name isn't taken
-        if (pageRepository.findByNameIgnoreCase(name) != null) {
+        if (pageRepository.findByNormalizedName(StringUtils.normalize(name)) != null) {
             throw new BadRequestException(Error.STATUS_PAGE_NAME_TAKEN);
         }
         // Handle cloud environment checks
@@ -61,10 +75,13 @@ public final class StatusPageService {
         // Create the status page and return it
         String slug = name.replace(" ", "-") +
                 "-" + ThreadLocalRandom.current().nextInt(10000, 99999);
-        return pageRepository.save(new StatusPage(
-                snowflakeService.generateSnowflake(), name, slug, null, null,
+        versionService.bump(owner.getSnowflake()); // The org's status pages are changing, aborts if the version can't be bumped
+        StatusPage statusPage = pageRepository.save(new StatusPage(
+                snowflakeService.generateSnowflake(), name, StringUtils.normalize(name), slug, null, null,
                 null, StatusPageTheme.AUTO, true, owner.getSnowflake())
         );
+        versionService.bumpAfterSave(owner.getSnowflake());
+        return statusPage;
     }
 
     /**
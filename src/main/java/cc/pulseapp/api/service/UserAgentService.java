@@ -0,0 +1,173 @@
+package cc.pulseapp.api.service;
+
+import cc.pulseapp.api.common.Tuple;
+import cc.pulseapp.api.model.user.device.BrowserType;
+import cc.pulseapp.api.model.user.device.DeviceType;
+import jakarta.annotation.PostConstruct;
+import lombok.NonNull;
+import lombok.extern.log4j.Log4j2;
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+import org.apache.commons.lang3.EnumUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+
+/**
+ * This service is responsible for classifying
+ * user agents into a {@link DeviceType} and
+ * {@link BrowserType}.
+ * <p>
+ * Building the Yauaa analyzer takes seconds, so it's
+ * built in the background (with only the fields we
+ * need) instead of holding up startup. Until it's
+ * ready, user agents are classified by a fast-path
+ * classifier matching well known tokens.
+ * </p>
+ * <p>
+ * The two don't always agree (e.g. Opera claims to be
+ * Chrome), so a fast-path classification is never stored
+ * on a session while the analyzer is still being built.
+ * </p>
+ *
+ * @author Braydon
+ */
+@Service @Log4j2(topic = "User Agents")
+public final class UserAgentService {
+    private static final String DEVICE_CLASS = "DeviceClass";
+    private static final String AGENT_NAME = "AgentName";
+
+    /**
+     * Whether to classify user agents with the analyzer.
+     */
+    @Value("${user-agent.analyzer-enabled:true}")
+    private boolean analyzerEnabled;
+
+    /**
+     * The number of parsed user agents to cache.
+     */
+    @Value("${user-agent.cache-size:1000}")
+    private int cacheSize;
+
+    /**
+     * The analyzer to classify with, null until built.
+     */
+    private volatile UserAgentAnalyzer analyzer;
+
+    /**
+     * Whether the analyzer is still being built, so
+     * classifications are only provisional.
+     */
+    private volatile boolean analyzerPending;
+
+    @PostConstruct
+    public void onInitialize() {
+        if (!analyzerEnabled) {
+            return;
+        }
+        analyzerPending = true;
+        Thread builder = new Thread(() -> {
+            long started = System.currentTimeMillis();
+            try {
+                analyzer = UserAgentAnalyzer.newBuilder()
+                        .withField(DEVICE_CLASS)
+                        .withField(AGENT_NAME)
+                        .withCache(cacheSize)
+                        .hideMatcherLoadStats()
+                        .immediateInitialization()
+                        .build();
+                log.info("Built the user agent analyzer in {}ms", System.currentTimeMillis() - started);
+            } catch (Exception ex) {
+                log.error("Failed to build the user agent analyzer, using the fast-path classifier", ex);
+            } finally {
+                analyzerPending = false;
+            }
+        }, "User Agent Analyzer Builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Classify the given user agent to be stored, only
+     * if the classification won't change once stored.
+     *
+     * @param userAgent the user agent, null if none
+     * @return the device and browser type, null if the analyzer is still being built
+     */
+    public Tuple<DeviceType, BrowserType> classifyForStorage(String userAgent) {
+        return analyzerPending ? null : classify(userAgent);
+    }
+
+    /**
+     * Classify the given user agent.
+     *
+     * @param userAgent the user agent, null if none
+     * @return the device and browser type
+     */
+    @NonNull
+    public Tuple<DeviceType, BrowserType> classify(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return new Tuple<>(DeviceType.UNKNOWN, BrowserType.UNKNOWN);
+        }
+        UserAgentAnalyzer analyzer = this.analyzer;
+        if (analyzer == null) { // Not built (yet)
+            return new Tuple<>(classifyDevice(userAgent), classifyBrowser(userAgent));
+        }
+        UserAgent.ImmutableUserAgent parsed = analyzer.parse(userAgent);
+        DeviceType deviceType = EnumUtils.getEnum(DeviceType.class, parsed.getValue(DEVICE_CLASS).toUpperCase(Locale.ROOT));
+        BrowserType browserType = EnumUtils.getEnum(BrowserType.class, parsed.getValue(AGENT_NAME).toUpperCase(Locale.ROOT));
+        return new Tuple<>(deviceType == null ? DeviceType.UNKNOWN : deviceType, browserType == null ? BrowserType.UNKNOWN : browserType);
+    }
+
+    /**
+     * Classify the device of the given user agent
+     * by the tokens of the common platforms.
+     *
+     * @param userAgent the user agent
+     * @return the device type
+     */
+    @NonNull
+    private static DeviceType classifyDevice(@NonNull String userAgent) {
+        if (userAgent.contains("iPad") || userAgent.contains("Tablet")
+                || (userAgent.contains("Android") && !userAgent.contains("Mobile"))) {
+            return DeviceType.TABLET;
+        }
+        if (userAgent.contains("iPhone") || userAgent.contains("Mobi")) {
+            return DeviceType.PHONE;
+        }
+        if (userAgent.contains("Windows NT") || userAgent.contains("Macintosh")
+                || userAgent.contains("X11") || userAgent.contains("CrOS")) {
+            return DeviceType.DESKTOP;
+        }
+        return DeviceType.UNKNOWN;
+    }
+
+    /**
+     * Classify the browser of the given user agent by
+     * its product token, checking the browsers that
+     * also claim to be Chrome or Safari first.
+     *
+     * @param userAgent the user agent
+     * @return the browser type
+     */
+    @NonNull
+    private static BrowserType classifyBrowser(@NonNull String userAgent) {
+        if (userAgent.contains("Edg/") || userAgent.contains("Edge/") || userAgent.contains("EdgA/") || userAgent.contains("EdgiOS/")) {
+            return BrowserType.EDGE;
+        }
+        if (userAgent.contains("SamsungBrowser/")) {
+            return BrowserType.SAMSUNGBROWSER;
+        }
+        if (userAgent.contains("Firefox/") || userAgent.contains("FxiOS/")) {
+            return BrowserType.FIREFOX;
+        }
+        if (userAgent.contains("Chrome/") || userAgent.contains("CriOS/")) {
+            return BrowserType.CHROME;
+        }
+        if (userAgent.contains("Safari/") && userAgent.contains("Version/")) {
+            return BrowserType.SAFARI;
+        }
+        return BrowserType.UNKNOWN;
+    }
+}
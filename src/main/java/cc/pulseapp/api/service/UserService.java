@@ -1,9 +1,9 @@
 package cc.pulseapp.api.service;
 
-import cc.pulseapp.api.common.HashUtils;
 import cc.pulseapp.api.common.StringUtils;
 import cc.pulseapp.api.common.Tuple;
 import cc.pulseapp.api.exception.impl.BadRequestException;
+import cc.pulseapp.api.exception.impl.TooManyRequestsException;
 import cc.pulseapp.api.model.IGenericResponse;
 import cc.pulseapp.api.model.org.Organization;
 import cc.pulseapp.api.model.user.TFAProfile;
@@ -18,20 +18,18 @@ import cc.pulseapp.api.model.user.input.DisableTFAInput;
 import cc.pulseapp.api.model.user.input.EnableTFAInput;
 import cc.pulseapp.api.model.user.input.UserExistsInput;
 import cc.pulseapp.api.model.user.response.UserSetupTFAResponse;
+import cc.pulseapp.api.model.user.session.AccessToken;
 import cc.pulseapp.api.model.user.session.Session;
-import cc.pulseapp.api.repository.SessionRepository;
+import cc.pulseapp.api.model.user.session.SessionLocation;
 import cc.pulseapp.api.repository.UserRepository;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.NonNull;
-import nl.basjes.parse.useragent.UserAgent;
-import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import org.apache.commons.lang3.EnumUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -41,12 +39,6 @@ import java.util.concurrent.TimeUnit;
  */
 @Service
 public final class UserService {
-    private static final UserAgentAnalyzer userAgentAnalyzer = UserAgentAnalyzer
-            .newBuilder()
-            .useJava8CompatibleCaching()
-            .withCache(10000)
-            .build();
-
     /**
      * The auth service to use.
      */
@@ -72,15 +64,30 @@ public final class UserService {
      */
     @NonNull private final TFAService tfaService;
 
+    /**
+     * The service to use for hashing backup codes.
+     */
+    @NonNull private final HashingService hashingService;
+
     /**
      * The user repository to use.
      */
     @NonNull private final UserRepository userRepository;
 
     /**
-     * The session repository to use.
+     * The session service to use.
+     */
+    @NonNull private final SessionService sessionService;
+
+    /**
+     * The service to classify user agents with.
+     */
+    @NonNull private final UserAgentService userAgentService;
+
+    /**
+     * The service to rate limit lookups with.
      */
-    @NonNull private final SessionRepository sessionRepository;
+    @NonNull private final RateLimitService rateLimitService;
 
     /**
      * A map of users who are setting up two-factor auth.
@@ -96,15 +103,19 @@ public final class UserService {
     @Autowired
     public UserService(@NonNull AuthService authService, @NonNull SnowflakeService snowflakeService,
                        @NonNull OrganizationService orgService, @NonNull StatusPageService statusPageService,
-                       @NonNull TFAService tfaService, @NonNull UserRepository userRepository,
-                       @NonNull SessionRepository sessionRepository) {
+                       @NonNull TFAService tfaService, @NonNull HashingService hashingService,
+                       @NonNull UserRepository userRepository, @NonNull SessionService sessionService,
+                       @NonNull UserAgentService userAgentService, @NonNull RateLimitService rateLimitService) {
         this.authService = authService;
         this.snowflakeService = snowflakeService;
         this.orgService = orgService;
         this.statusPageService = statusPageService;
         this.tfaService = tfaService;
+        this.hashingService = hashingService;
         this.userRepository = userRepository;
-        this.sessionRepository = sessionRepository;
+        this.sessionService = sessionService;
+        this.userAgentService = userAgentService;
+        this.rateLimitService = rateLimitService;
     }
 
     /**
@@ -118,18 +129,33 @@ public final class UserService {
         return UserDTO.asDTO(user, new Date(snowflakeService.extractCreationTime(user.getSnowflake())));
     }
 
+    /**
+     * Get the entity tag of the
+     * currently authenticated user.
+     *
+     * @return the strong entity tag
+     */
+    @NonNull
+    public String getUserETag() {
+        User user = authService.getAuthenticatedUser();
+        return "\"" + user.getSnowflake() + "-" + user.getVersion() + "\"";
+    }
+
     /**
      * Check if a user exists
      * with the given email.
      *
-     * @param input the input to check
+     * @param request the http request
+     * @param input   the input to check
      * @return whether the user exists
+     * @throws TooManyRequestsException if too many lookups were made
      */
-    public boolean doesUserExist(UserExistsInput input) {
+    public boolean doesUserExist(@NonNull HttpServletRequest request, UserExistsInput input) throws TooManyRequestsException {
         if (input == null || (!input.isValid())) { // Ensure the input was provided
             throw new BadRequestException(Error.MALFORMED_USER_EXISTS_INPUT);
         }
-        return StringUtils.isValidEmail(input.getEmail()) && userRepository.findByEmailIgnoreCase(input.getEmail()) != null;
+        rateLimitService.checkAttempt("exists", request, input.getEmail());
+        return StringUtils.isValidEmail(input.getEmail()) && userRepository.findByNormalizedEmail(StringUtils.normalize(input.getEmail())) != null;
     }
 
     /**
@@ -155,7 +181,7 @@ public final class UserService {
         Organization org = orgService.createOrganization(input.getOrganizationName(), input.getOrganizationSlug(), user); // Create the org
         statusPageService.createStatusPage(input.getStatusPageName(), org); // Create the status page
         user.addFlag(UserFlag.COMPLETED_ONBOARDING); // Flag completed onboarding
-        userRepository.save(user);
+        authService.saveUser(user);
     }
 
     /**
@@ -189,9 +215,9 @@ public final class UserService {
         if (input == null || (!input.isValid())) { // Ensure the input was provided
             throw new BadRequestException(Error.MALFORMED_ENABLE_TFA_INPUT);
         }
-        Tuple<Session, User> sessionAndUser = authService.getSessionAndUser();
-        Session session = sessionAndUser.getLeft();
-        User user = sessionAndUser.getRight();
+        Tuple<AccessToken, User> accessTokenAndUser = authService.getAccessTokenAndUser();
+        AccessToken accessToken = accessTokenAndUser.getLeft();
+        User user = accessTokenAndUser.getRight();
         if (user.hasFlag(UserFlag.TFA_ENABLED)) { // Ensure TFA isn't already on
             throw new BadRequestException(Error.TFA_ALREADY_ENABLED);
         }
@@ -206,24 +232,21 @@ public final class UserService {
             throw new BadRequestException(Error.TFA_PIN_INVALID);
         }
         // Enable TFA for the user
-        byte[] salt = HashUtils.generateSalt();
         List<String> originalBackupCodes = new ArrayList<>();
         for (int i = 0; i < 8; i++) { // Generate 8 backup codes
             originalBackupCodes.add(StringUtils.generateRandom(6, false, true, false));
         }
 
-        // Encrypt the stored backup codes
-        List<String> storedBackupCodes = originalBackupCodes.stream()
-                .map(backupCode -> HashUtils.hash(salt, backupCode))
-                .toList();
-        user.setTfa(new TFAProfile(secret, Base64.getEncoder().encodeToString(salt), storedBackupCodes));
+        // Encrypt the stored backup codes (in parallel)
+        List<String> storedBackupCodes = new ArrayList<>(hashingService.hashAll(originalBackupCodes));
+        user.setTfa(new TFAProfile(secret, null, storedBackupCodes));
         user.addFlag(UserFlag.TFA_ENABLED);
-        userRepository.save(user);
+        authService.saveUser(user);
 
         // And finally invalidate all of the sessions for the user
-        List<Session> sessions = sessionRepository.findAllByUserSnowflake(user.getSnowflake());
-        sessions.removeIf(activeSession -> activeSession.equals(session));
-        sessionRepository.deleteAll(sessions);
+        List<Session> sessions = new ArrayList<>(sessionService.getSessions(user.getSnowflake()));
+        sessions.removeIf(activeSession -> activeSession.getSnowflake() == accessToken.getSessionSnowflake());
+        sessionService.deleteSessions(sessions);
 
         return originalBackupCodes;
     }
@@ -248,7 +271,7 @@ public final class UserService {
         // Disable TFA for the user
         user.setTfa(null);
         user.removeFlag(UserFlag.TFA_ENABLED);
-        userRepository.save(user);
+        authService.saveUser(user);
     }
 
     /**
@@ -261,15 +284,14 @@ public final class UserService {
     public List<Device> getDevices() {
         List<Device> devices = new ArrayList<>();
         User user = authService.getAuthenticatedUser();
-        for (Session session : sessionRepository.findAllByUserSnowflake(user.getSnowflake())) {
-            UserAgent.ImmutableUserAgent userAgent = userAgentAnalyzer.parse(session.getLocation().getUserAgent());
-            DeviceType deviceType = EnumUtils.getEnum(DeviceType.class, userAgent.get("DeviceClass").getValue().toUpperCase());
-            BrowserType browserType = EnumUtils.getEnum(BrowserType.class, userAgent.get("AgentName").getValue().toUpperCase());
-            if (deviceType == null) {
-                deviceType = DeviceType.UNKNOWN;
-            }
-            if (browserType == null) {
-                browserType = BrowserType.UNKNOWN;
+        for (Session session : sessionService.getSessions(user.getSnowflake())) {
+            SessionLocation location = session.getLocation();
+            DeviceType deviceType = location.getDeviceType();
+            BrowserType browserType = location.getBrowserType();
+            if (deviceType == null || browserType == null) { // Not classified when created, classify it now
+                Tuple<DeviceType, BrowserType> userAgent = userAgentService.classify(location.getUserAgent());
+                deviceType = userAgent.getLeft();
+                browserType = userAgent.getRight();
             }
             devices.add(Device.fromSession(session, deviceType, browserType, new Date(snowflakeService.extractCreationTime(session.getSnowflake()))));
         }
@@ -280,7 +302,7 @@ public final class UserService {
      * Logout the user.
      */
     public void logout() {
-        sessionRepository.delete(authService.getSessionAndUser().getLeft());
+        sessionService.deleteSession(authService.getAccessTokenAndUser().getLeft().getSessionSnowflake());
     }
 
     /**